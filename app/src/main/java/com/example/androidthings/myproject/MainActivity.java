@@ -20,7 +20,11 @@ import android.app.Activity;
 import android.os.Bundle;
 import android.widget.TextView;
 
+import com.redkea.androidthings.AndroidThingsBackend;
 import com.redkea.androidthings.ConnectionEventListener;
+import com.redkea.androidthings.DispatchMode;
+import com.redkea.androidthings.InboundPolicy;
+import com.redkea.androidthings.MainThreadExecutor;
 import com.redkea.androidthings.Manager;
 import com.redkea.androidthings.ParameterParser;
 import com.redkea.androidthings.ReceiveFunction;
@@ -64,7 +68,7 @@ public class MainActivity extends Activity {
         textView.setText("Hello IoT!!!");
 
         try {
-            this.manager = new Manager(deviceID);
+            this.manager = new Manager(deviceID, new AndroidThingsBackend(), new MainThreadExecutor());
             this.manager.start();
         } catch (IOException e) {
             e.printStackTrace();
@@ -94,7 +98,7 @@ public class MainActivity extends Activity {
             public void onReceive(ParameterParser parser) {
                 textView.setText("Slider value: " + String.valueOf(parser.readFromSlider()));
             }
-        });
+        }, DispatchMode.MAIN_THREAD, InboundPolicy.latestValue());
 
         this.manager.registerReceiver("onTouch", new ReceiveFunction() {
             @Override
@@ -112,4 +116,10 @@ public class MainActivity extends Activity {
             }
         });
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        this.manager.stop();
+    }
 }
@@ -0,0 +1,161 @@
+package com.redkea.androidthings;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.google.android.things.pio.Gpio;
+import com.google.android.things.pio.GpioCallback;
+import com.google.android.things.pio.PeripheralManagerService;
+import com.google.android.things.pio.Pwm;
+
+import java.io.IOException;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * {@link PeripheralBackend} for Android Things boards, backed by the
+ * {@link PeripheralManagerService}.
+ */
+public class AndroidThingsBackend implements PeripheralBackend {
+    private PeripheralManagerService peripheralManager = new PeripheralManagerService();
+    private Handler edgeHandler = null;
+
+    @Override
+    public GpioPin openGpio(String name) throws IOException {
+        return new AndroidGpio(this.peripheralManager.openGpio(name));
+    }
+
+    /**
+     * Edge callbacks run on their own thread, so they are not held up by the main thread.
+     */
+    private synchronized Handler getEdgeHandler() {
+        if (this.edgeHandler == null) {
+            HandlerThread thread = new HandlerThread("redkeaGpioEdges");
+            thread.start();
+            this.edgeHandler = new Handler(thread.getLooper());
+        }
+        return this.edgeHandler;
+    }
+
+    @Override
+    public PwmPin openPwm(String name) throws IOException {
+        return new AndroidPwm(this.peripheralManager.openPwm(name));
+    }
+
+    private class AndroidGpio implements GpioPin {
+        private final Gpio gpio;
+        private GpioCallback callback = null;
+
+        AndroidGpio(Gpio gpio) {
+            this.gpio = gpio;
+        }
+
+        @Override
+        public void setDirection(int direction) throws IOException {
+            switch (direction) {
+                case DIRECTION_IN:
+                    this.gpio.setDirection(Gpio.DIRECTION_IN);
+                    break;
+                case DIRECTION_OUT_INITIALLY_HIGH:
+                    this.gpio.setDirection(Gpio.DIRECTION_OUT_INITIALLY_HIGH);
+                    break;
+                case DIRECTION_OUT_INITIALLY_LOW:
+                    this.gpio.setDirection(Gpio.DIRECTION_OUT_INITIALLY_LOW);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown direction " + direction);
+            }
+        }
+
+        @Override
+        public void setValue(boolean value) throws IOException {
+            this.gpio.setValue(value);
+        }
+
+        @Override
+        public boolean getValue() throws IOException {
+            return this.gpio.getValue();
+        }
+
+        @Override
+        public void setEdgeListener(final EdgeListener listener) throws IOException {
+            if (this.callback != null) {
+                this.gpio.unregisterGpioCallback(this.callback);
+                this.callback = null;
+            }
+            if (listener == null) {
+                this.gpio.setEdgeTriggerType(Gpio.EDGE_NONE);
+                return;
+            }
+            this.gpio.setEdgeTriggerType(Gpio.EDGE_BOTH);
+            this.callback = new GpioCallback() {
+                @Override
+                public boolean onGpioEdge(Gpio gpio) {
+                    long timestamp = System.nanoTime();
+                    try {
+                        listener.onEdge(AndroidGpio.this, gpio.getValue(), timestamp);
+                    } catch (IOException e) {
+                        return false;
+                    }
+                    return true;
+                }
+            };
+            this.gpio.registerGpioCallback(this.callback, getEdgeHandler());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.callback != null) {
+                this.gpio.unregisterGpioCallback(this.callback);
+                this.callback = null;
+            }
+            this.gpio.close();
+        }
+    }
+
+    private static class AndroidPwm implements PwmPin {
+        private final Pwm pwm;
+
+        AndroidPwm(Pwm pwm) {
+            this.pwm = pwm;
+        }
+
+        @Override
+        public void setFrequencyHz(double frequencyHz) throws IOException {
+            this.pwm.setPwmFrequencyHz(frequencyHz);
+        }
+
+        @Override
+        public void setDutyCycle(double dutyCycle) throws IOException {
+            this.pwm.setPwmDutyCycle(dutyCycle);
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            this.pwm.setEnabled(enabled);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.pwm.close();
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.redkea.androidthings;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
 /*
         redkea library for Android Things
         Copyright 2017 redkea
@@ -20,21 +25,14 @@ package com.redkea.androidthings;
     along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
 */
 
+/**
+ * Runs callbacks on the main looper, so receive and send functions may touch the UI.
+ */
+public class MainThreadExecutor implements Executor {
+    private Handler handler = new Handler(Looper.getMainLooper());
 
-enum CommandType {
-    UNDEFINED,
-
-    WRITE_TO_DIGITAL_PIN,
-    WRITE_TO_ANALOG_PIN,
-    WRITE_TO_FUNCTION,
-    WELCOME,
-    SETUP_TIMERS,
-    PING,
-
-    READ_FROM_DIGITAL_PIN,
-    READ_FROM_ANALOG_PIN,
-    READ_FROM_FUNCTION,
-
-    DATA_SEND,
-    PONG
+    @Override
+    public void execute(Runnable runnable) {
+        this.handler.post(runnable);
+    }
 }
@@ -0,0 +1,113 @@
+package com.redkea.androidthings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Encoding and decoding of single frames with different parameter mixes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandCodecBenchmark {
+    private static final String LONG_TEXT = new String(new char[1000]).replace('\0', 'x');
+
+    @Param({"bool", "short", "float", "longString"})
+    public String mix;
+
+    @Param({"1", "2"})
+    public int version;
+
+    private ByteBuffer out;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setup() {
+        this.out = ByteBuffer.allocateDirect(Command.HEADER_SIZE + 0xFFFF);
+        this.out.order(ByteOrder.LITTLE_ENDIAN);
+
+        Command command = build();
+        this.frame = ByteBuffer.allocateDirect(command.getFrameSize(this.version));
+        this.frame.order(ByteOrder.LITTLE_ENDIAN);
+        command.writeTo(this.frame, this.version);
+        this.frame.flip();
+        command.recycle();
+    }
+
+    @Benchmark
+    public int writeTo() {
+        Command command = build();
+        this.out.clear();
+        command.writeTo(this.out, this.version);
+        command.recycle();
+        return this.out.position();
+    }
+
+    @Benchmark
+    public CommandType readFrom() throws IOException {
+        this.frame.position(0);
+        Command command = Command.obtain();
+        if (this.version == Command.VERSION_2) {
+            CompactCodec.readFrom(command, this.frame);
+        } else {
+            command.readFrom(this.frame);
+        }
+        CommandType type = command.getCommandType();
+        command.recycle();
+        return type;
+    }
+
+    private Command build() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString("widget-01");
+        switch (this.mix) {
+            case "bool":
+                command.addBool(true);
+                break;
+            case "short":
+                command.addInt16((short) 512);
+                break;
+            case "float":
+                command.addFloat(21.5f);
+                break;
+            case "longString":
+                command.addString(LONG_TEXT);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mix " + this.mix);
+        }
+        return command;
+    }
+}
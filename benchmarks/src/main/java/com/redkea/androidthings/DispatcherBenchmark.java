@@ -0,0 +1,85 @@
+package com.redkea.androidthings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Cost of routing a WRITE_TO_FUNCTION frame to one of many registered receivers. The callback
+ * executor runs inline on the calling thread, so this includes queueing for the receiver and the
+ * user function call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatcherBenchmark {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Param({"1", "16", "256"})
+    public int receivers;
+
+    private Dispatcher dispatcher;
+    private String[] keys;
+    private int next;
+    private int lastValue;
+
+    @Setup
+    public void setup() {
+        this.dispatcher = new Dispatcher(null, new SimulatedBackend(), DIRECT, new Metrics());
+        this.keys = new String[this.receivers];
+        for (int i = 0; i < this.receivers; ++i) {
+            this.keys[i] = "onSlide" + i;
+            this.dispatcher.registerReceiver(this.keys[i], new ReceiveFunction() {
+                @Override
+                public void onReceive(ParameterParser parser) {
+                    lastValue = parser.readFromSlider();
+                }
+            }, DispatchMode.MAIN_THREAD, InboundPolicy.deliverAll());
+        }
+    }
+
+    @Benchmark
+    public int dispatch() throws IOException {
+        int index = this.next++;
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.WRITE_TO_FUNCTION);
+        command.addString(this.keys[index % this.receivers]);
+        command.addInt16((short) index);
+        this.dispatcher.dispatch(command);
+        return this.lastValue;
+    }
+}
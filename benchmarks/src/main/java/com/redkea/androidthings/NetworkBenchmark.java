@@ -0,0 +1,131 @@
+package com.redkea.androidthings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Throughput of producers queueing commands through {@link Network#sendCommand(Command)}, with
+ * the reactor threads draining their queues concurrently. One client per reactor is connected
+ * and drains its socket, since reactors without connections drop commands without queueing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class NetworkBenchmark {
+    @Param({"1", "4"})
+    public int reactors;
+
+    private static final int PORT = 5050;
+
+    private ExecutorService callbackExecutor;
+    private Network network;
+    private Thread networkThread;
+    private SocketChannel[] clients;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        this.callbackExecutor = Executors.newSingleThreadExecutor();
+        this.network = new Network(null, this.callbackExecutor, new Metrics(), this.reactors, PORT);
+        // the clients never answer PINGs, so don't let the silence check close them
+        this.network.setHeartbeat(0, TimeUnit.SECONDS, 1);
+        final CountDownLatch connected = new CountDownLatch(this.reactors);
+        this.network.setConnectionEventListener(new ConnectionEventListener() {
+            @Override
+            public void onConnect() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnect() {
+            }
+        });
+        this.networkThread = new Thread(this.network, "redkeaNetwork");
+        this.networkThread.start();
+
+        // the acceptor hands each new connection to the least loaded reactor, so every one gets a client
+        this.clients = new SocketChannel[this.reactors];
+        for (int i = 0; i < this.clients.length; ++i) {
+            this.clients[i] = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT));
+            drain(this.clients[i]);
+        }
+        if (!connected.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Clients did not connect");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        this.networkThread.interrupt();
+        this.networkThread.join();
+        for (SocketChannel client : this.clients) {
+            client.close();
+        }
+        this.callbackExecutor.shutdown();
+    }
+
+    @Benchmark
+    public void sendCommand() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString("widget-01");
+        command.addBool(true);
+        this.network.sendCommand(command);
+    }
+
+    private static void drain(final SocketChannel client) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                try {
+                    while (client.read(buffer) >= 0) {
+                        buffer.clear();
+                    }
+                } catch (IOException e) {
+                    // closed in tearDown
+                }
+            }
+        }, "benchmarkClient");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
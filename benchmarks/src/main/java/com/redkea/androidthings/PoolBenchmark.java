@@ -0,0 +1,83 @@
+package com.redkea.androidthings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Acquire/release round trips on a pool shared by 1 to 8 threads. Each thread count is its own
+ * subclass, because JMH cannot parameterize the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public abstract class PoolBenchmark {
+
+    @Param({"synchronized", "concurrent"})
+    public String pool;
+
+    private Pools.Pool<Object> instances;
+
+    @Setup
+    public void setup() {
+        if (this.pool.equals("synchronized")) {
+            this.instances = new Pools.SynchronizedPool<>(10);
+        } else {
+            this.instances = new Pools.ConcurrentPool<>(32, 256);
+        }
+    }
+
+    @Benchmark
+    public Object acquireRelease() {
+        Object instance = this.instances.acquire();
+        if (instance == null) {
+            instance = new Object();
+        }
+        this.instances.release(instance);
+        return instance;
+    }
+
+    @Threads(1)
+    public static class OneThread extends PoolBenchmark {
+    }
+
+    @Threads(2)
+    public static class TwoThreads extends PoolBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends PoolBenchmark {
+    }
+
+    @Threads(8)
+    public static class EightThreads extends PoolBenchmark {
+    }
+}
@@ -0,0 +1,135 @@
+package com.redkea.androidthings;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Shared slab of direct buffers in a few size classes.
+ * <p>
+ * Commands, frame decoders and outbound buffers borrow capacity from here when they need it and
+ * give it back as soon as they are empty, so the memory held is proportional to the bytes in
+ * flight instead of to the number of pooled objects. Requests larger than the biggest size class
+ * get an exact-size buffer that is not retained.
+ */
+final class BufferSlab {
+    private static final int[] SIZE_CLASSES = {512, 2048, 8192, 32768, 131072};
+    private static final int RETAINED_BYTES_PER_CLASS = 256 * 1024;
+    private static final List<Pools.ConcurrentPool<Chunk>> pools = new ArrayList<>(SIZE_CLASSES.length);
+
+    static {
+        for (int i = 0; i < SIZE_CLASSES.length; ++i) {
+            int retained = Math.max(4, RETAINED_BYTES_PER_CLASS / SIZE_CLASSES[i]);
+            pools.add(new Pools.ConcurrentPool<Chunk>(Math.max(1, retained / 8), retained));
+        }
+    }
+
+    private BufferSlab() {
+        /* do nothing - hiding constructor */
+    }
+
+    /**
+     * @return A cleared chunk with at least the given capacity.
+     */
+    static Chunk acquire(int minCapacity) {
+        int sizeClass = sizeClassFor(minCapacity);
+        if (sizeClass < 0) {
+            return new Chunk(minCapacity, sizeClass);
+        }
+        Chunk chunk = pools.get(sizeClass).acquire();
+        return (chunk != null) ? chunk : new Chunk(SIZE_CLASSES[sizeClass], sizeClass);
+    }
+
+    /**
+     * @return The number of acquires served from the slab, over all size classes.
+     */
+    static long getHitCount() {
+        long count = 0;
+        for (Pools.ConcurrentPool<Chunk> pool : pools) {
+            count += pool.getHitCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of acquires that had to allocate a chunk, over all size classes.
+     */
+    static long getMissCount() {
+        long count = 0;
+        for (Pools.ConcurrentPool<Chunk> pool : pools) {
+            count += pool.getMissCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns a chunk to the slab. The chunk must not be used afterwards.
+     */
+    static void release(Chunk chunk) {
+        if (chunk.sizeClass >= 0) {
+            chunk.buffer.clear();
+            pools.get(chunk.sizeClass).release(chunk);
+        }
+    }
+
+    private static int sizeClassFor(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; ++i) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A direct little endian buffer together with a reusable view of it, so users can copy ranges
+     * in and out without creating duplicates.
+     */
+    static final class Chunk {
+        final ByteBuffer buffer;
+        final ByteBuffer view;
+        private final int sizeClass;
+
+        private Chunk(int capacity, int sizeClass) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+            this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.view = this.buffer.duplicate();
+            this.view.order(ByteOrder.LITTLE_ENDIAN);
+            this.sizeClass = sizeClass;
+        }
+
+        int capacity() {
+            return this.buffer.capacity();
+        }
+
+        /**
+         * @return The view, positioned at the given offset and limited to the given length.
+         */
+        ByteBuffer view(int offset, int length) {
+            this.view.limit(offset + length);
+            this.view.position(offset);
+            return this.view;
+        }
+    }
+}
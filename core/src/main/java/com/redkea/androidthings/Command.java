@@ -0,0 +1,470 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+/**
+ * A protocol frame: a command type plus a list of typed parameters.
+ * <p>
+ * Parameters are kept in parallel primitive arrays instead of boxed objects: one type tag and one
+ * value slot per parameter. Numbers and booleans live directly in the value slot (floats as their
+ * raw bits), strings and raw bytes are stored in a chunk borrowed from the {@link BufferSlab} and
+ * their value slot holds the offset and length into it. The chunk is given back on
+ * {@link #recycle()}, so pooled commands only hold their small slot arrays.
+ */
+class Command {
+    static final int HEADER_SIZE = 3;
+    /** The most parameter bytes a frame carries, limited by the 16-bit length in its header. */
+    static final int MAX_PARAM_SIZE = 0xFFFF;
+
+    /** The original encoding, used until a connection negotiates another one. */
+    static final int VERSION_1 = 1;
+    /** The compact encoding of {@link CompactCodec}. */
+    static final int VERSION_2 = 2;
+
+    static final byte TYPE_INT8 = 0;
+    static final byte TYPE_INT16 = 1;
+    static final byte TYPE_BOOL = 2;
+    static final byte TYPE_FLOAT = 3;
+    static final byte TYPE_STRING = 4;
+    static final byte TYPE_BYTES = 5;
+
+    private static final int INITIAL_PARAM_CAPACITY = 8;
+    private static final Pools.ConcurrentPool<Command> pool = new Pools.ConcurrentPool<>(32, 256);
+
+    /** Link used by {@link CommandQueue} while the command is queued. */
+    Command next;
+    /** The connection a received command came from. */
+    Connection source;
+    /** The connections an outgoing command is sent to, or null to send it to all of them. */
+    Collection<Connection> targets;
+    /** The WELCOME capabilities a connection needs to be sent this command, 0 for none. */
+    int requiredCapabilities;
+    /** {@link System#nanoTime()} when a received command was queued for its receive function. */
+    long queuedAt;
+    /** The tracer of a sampled command, null for all others. */
+    Tracer tracer;
+    /** The {@link System#nanoTime()} stamps of a sampled command, indexed by tracer stage. */
+    final long[] traceStamps = new long[Tracer.STAGES];
+
+    private CommandType commandType;
+    private int paramCount = 0;
+    private byte[] paramTypes = new byte[INITIAL_PARAM_CAPACITY];
+    private long[] paramValues = new long[INITIAL_PARAM_CAPACITY];
+    private String[] decodedStrings = new String[INITIAL_PARAM_CAPACITY];
+    private BufferSlab.Chunk stringData = null;
+    private int stringDataSize = 0;
+    private int paramSize = 0;
+
+    private Command() {
+        this.commandType = CommandType.UNDEFINED;
+    }
+
+    static Pools.ConcurrentPool<Command> getPool() {
+        return pool;
+    }
+
+    static Command obtain() {
+        Command instance = pool.acquire();
+        return (instance != null) ? instance : new Command();
+    }
+
+    void recycle() {
+        if (this.tracer != null) {
+            this.tracer.commit(this);
+        }
+        reset();
+        pool.release(this);
+    }
+
+    /**
+     * @return A new command with the type, parameters, targets and required capabilities of this
+     * one, but not traced.
+     */
+    Command copy() {
+        Command copy = obtain();
+        copy.commandType = this.commandType;
+        for (int i = 0; i < this.paramCount; ++i) {
+            copy.addSlot(this.paramTypes[i], this.paramValues[i]);
+            copy.decodedStrings[i] = this.decodedStrings[i];
+        }
+        copy.paramSize = this.paramSize;
+        if (this.stringDataSize > 0) {
+            int offset = copy.reserveStringData(this.stringDataSize);
+            copy.stringData.view(offset, this.stringDataSize).put(this.stringData.view(0, this.stringDataSize));
+        }
+        copy.targets = this.targets;
+        copy.requiredCapabilities = this.requiredCapabilities;
+        return copy;
+    }
+
+    /**
+     * Records the current time for the given stage if the command is traced.
+     */
+    void stamp(int stage) {
+        if (this.tracer != null) {
+            this.traceStamps[stage] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records the given {@link System#nanoTime()} for the given stage if the command is traced.
+     */
+    void stamp(int stage, long nanos) {
+        if (this.tracer != null) {
+            this.traceStamps[stage] = nanos;
+        }
+    }
+
+    CommandType getCommandType() {
+        return this.commandType;
+    }
+
+    void setCommandType(CommandType commandType) {
+        this.commandType = commandType;
+    }
+
+    void addInt8(byte b) {
+        reserveParamSize(2);
+        addSlot(TYPE_INT8, b);
+    }
+
+    void addInt16(short s) {
+        reserveParamSize(3);
+        addSlot(TYPE_INT16, s);
+    }
+
+    void addBool(boolean b) {
+        reserveParamSize(2);
+        addSlot(TYPE_BOOL, b ? 1 : 0);
+    }
+
+    void addFloat(float f) {
+        reserveParamSize(5);
+        addSlot(TYPE_FLOAT, Float.floatToRawIntBits(f));
+    }
+
+    void addString(String s) {
+        int length = Utf8.encodedLength(s);
+        reserveParamSize(3 + length);
+        int offset = reserveStringData(length);
+        Utf8.encode(s, this.stringData.buffer, offset);
+        addSlot(TYPE_STRING, ((long) offset << 32) | length);
+        this.decodedStrings[this.paramCount - 1] = s;
+    }
+
+    /**
+     * Adds raw bytes, encoded like a string but without any character set.
+     */
+    void addBytes(byte[] bytes, int offset, int length) {
+        reserveParamSize(3 + length);
+        int dataOffset = reserveStringData(length);
+        this.stringData.view(dataOffset, length).put(bytes, offset, length);
+        addSlot(TYPE_BYTES, ((long) dataOffset << 32) | length);
+    }
+
+    /**
+     * Adds a bytes parameter of the given length, to be filled in place.
+     *
+     * @return The little endian view of the parameter, only valid until the next one is added.
+     */
+    ByteBuffer addBytes(int length) {
+        reserveParamSize(3 + length);
+        int dataOffset = reserveStringData(length);
+        addSlot(TYPE_BYTES, ((long) dataOffset << 32) | length);
+        return this.stringData.view(dataOffset, length);
+    }
+
+    /**
+     * Adds a string or bytes parameter from the next length bytes of the buffer, without decoding
+     * them.
+     */
+    void addData(byte paramType, ByteBuffer src, int length) {
+        reserveParamSize(3 + length);
+        int offset = reserveStringData(length);
+        int limit = src.limit();
+        src.limit(src.position() + length);
+        this.stringData.view(offset, length).put(src);
+        src.limit(limit);
+        addSlot(paramType, ((long) offset << 32) | length);
+    }
+
+    public void addCommandType(CommandType commandType) {
+        addInt8(commandType.getCode());
+    }
+
+    int getParamCount() {
+        return this.paramCount;
+    }
+
+    byte getParamType(int index) {
+        checkIndex(index);
+        return this.paramTypes[index];
+    }
+
+    byte getInt8(int index) {
+        return (byte) slot(index, TYPE_INT8);
+    }
+
+    short getInt16(int index) {
+        return (short) slot(index, TYPE_INT16);
+    }
+
+    boolean getBool(int index) {
+        return slot(index, TYPE_BOOL) != 0;
+    }
+
+    float getFloat(int index) {
+        return Float.intBitsToFloat((int) slot(index, TYPE_FLOAT));
+    }
+
+    /**
+     * @return The string parameter at the given index. It is decoded on first access and cached
+     * until the command is recycled.
+     */
+    String getString(int index) {
+        long value = slot(index, TYPE_STRING);
+        String s = this.decodedStrings[index];
+        if (s == null) {
+            byte[] bytes = new byte[(int) value];
+            this.stringData.view((int) (value >>> 32), bytes.length).get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            this.decodedStrings[index] = s;
+        }
+        return s;
+    }
+
+    /**
+     * @return A copy of the bytes parameter at the given index.
+     */
+    byte[] getBytes(int index) {
+        long value = slot(index, TYPE_BYTES);
+        byte[] bytes = new byte[(int) value];
+        this.stringData.view((int) (value >>> 32), bytes.length).get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return The view of the encoded bytes of the string or bytes parameter at the given index.
+     */
+    ByteBuffer getData(int index) {
+        checkIndex(index);
+        long value = this.paramValues[index];
+        return this.stringData.view((int) (value >>> 32), (int) value);
+    }
+
+    void setInt8(int index, byte b) {
+        slot(index, TYPE_INT8);
+        this.paramValues[index] = b;
+    }
+
+    void setInt16(int index, short s) {
+        slot(index, TYPE_INT16);
+        this.paramValues[index] = s;
+    }
+
+    void setBool(int index, boolean b) {
+        slot(index, TYPE_BOOL);
+        this.paramValues[index] = b ? 1 : 0;
+    }
+
+    void setFloat(int index, float f) {
+        slot(index, TYPE_FLOAT);
+        this.paramValues[index] = Float.floatToRawIntBits(f);
+    }
+
+    /**
+     * Decodes one frame. The buffer has to be positioned at the start of the frame and limited
+     * to its end, as done by {@link FrameDecoder}.
+     */
+    void readFrom(ByteBuffer frame) throws IOException {
+        // read header
+        this.commandType = CommandType.fromCode(frame.get());
+        frame.getShort();
+
+        // read params
+        while (frame.hasRemaining()) {
+            byte paramType = frame.get();
+            switch (paramType) {
+                case TYPE_INT8:
+                    addInt8(frame.get());
+                    break;
+                case TYPE_INT16:
+                    addInt16(frame.getShort());
+                    break;
+                case TYPE_BOOL:
+                    addBool((frame.get() & (byte) 0x01) != 0);
+                    break;
+                case TYPE_FLOAT:
+                    addFloat(frame.getFloat());
+                    break;
+                case TYPE_STRING:
+                case TYPE_BYTES:
+                    addData(paramType, frame, frame.getShort() & 0xFFFF);
+                    break;
+                default:
+                    throw new IOException("Unknown parameter type " + paramType);
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes {@link #writeTo(ByteBuffer)} produces.
+     */
+    int getFrameSize() {
+        return HEADER_SIZE + this.paramSize;
+    }
+
+    /**
+     * @return The number of bytes {@link #writeTo(ByteBuffer, int)} produces for the given
+     * protocol version.
+     */
+    int getFrameSize(int version) {
+        return (version == VERSION_2) ? CompactCodec.getFrameSize(this) : getFrameSize();
+    }
+
+    /**
+     * Encodes the frame in the given protocol version.
+     */
+    void writeTo(ByteBuffer out, int version) {
+        if (version == VERSION_2) {
+            CompactCodec.writeTo(this, out);
+        } else {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Encodes the frame into the given buffer, which needs at least {@link #getFrameSize()}
+     * bytes remaining.
+     */
+    void writeTo(ByteBuffer out) {
+        // write header
+        out.put(this.commandType.getCode());
+        out.putShort((short) this.paramSize);
+
+        // write params
+        for (int i = 0; i < this.paramCount; ++i) {
+            byte paramType = this.paramTypes[i];
+            long value = this.paramValues[i];
+            out.put(paramType);
+            switch (paramType) {
+                case TYPE_INT8:
+                case TYPE_BOOL:
+                    out.put((byte) value);
+                    break;
+                case TYPE_INT16:
+                    out.putShort((short) value);
+                    break;
+                case TYPE_FLOAT:
+                    out.putInt((int) value);
+                    break;
+                case TYPE_STRING:
+                case TYPE_BYTES:
+                    out.putShort((short) value);
+                    out.put(this.stringData.view((int) (value >>> 32), (int) value));
+                    break;
+            }
+        }
+    }
+
+    private void addSlot(byte paramType, long value) {
+        if (this.paramCount == this.paramTypes.length) {
+            int capacity = this.paramCount * 2;
+            this.paramTypes = Arrays.copyOf(this.paramTypes, capacity);
+            this.paramValues = Arrays.copyOf(this.paramValues, capacity);
+            this.decodedStrings = Arrays.copyOf(this.decodedStrings, capacity);
+        }
+        this.paramTypes[this.paramCount] = paramType;
+        this.paramValues[this.paramCount] = value;
+        this.paramCount++;
+    }
+
+    /**
+     * Accounts for the encoded size of a parameter about to be added.
+     *
+     * @throws IllegalArgumentException If the parameters would no longer fit into the 16-bit
+     *                                  payload length of a frame.
+     */
+    private void reserveParamSize(int bytes) {
+        if (this.paramSize + bytes > MAX_PARAM_SIZE) {
+            throw new IllegalArgumentException("Parameters of " + (this.paramSize + bytes)
+                    + " bytes exceed the frame limit of " + MAX_PARAM_SIZE);
+        }
+        this.paramSize += bytes;
+    }
+
+    private int reserveStringData(int length) {
+        int offset = this.stringDataSize;
+        if (this.stringData == null) {
+            this.stringData = BufferSlab.acquire(length);
+        } else if (offset + length > this.stringData.capacity()) {
+            BufferSlab.Chunk grown = BufferSlab.acquire(offset + length);
+            grown.buffer.put(this.stringData.view(0, offset));
+            BufferSlab.release(this.stringData);
+            this.stringData = grown;
+        }
+        this.stringDataSize += length;
+        return offset;
+    }
+
+    private long slot(int index, byte paramType) {
+        checkIndex(index);
+        if (this.paramTypes[index] != paramType) {
+            throw new IllegalArgumentException("Parameter " + index + " has type " + this.paramTypes[index]
+                    + ", expected " + paramType);
+        }
+        return this.paramValues[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.paramCount) {
+            throw new IndexOutOfBoundsException("Parameter " + index + " of " + this.paramCount);
+        }
+    }
+
+    private void reset() {
+        this.paramSize = 0;
+        this.commandType = CommandType.UNDEFINED;
+        Arrays.fill(this.decodedStrings, 0, this.paramCount, null);
+        this.paramCount = 0;
+        this.stringDataSize = 0;
+        if (this.stringData != null) {
+            BufferSlab.release(this.stringData);
+            this.stringData = null;
+        }
+        this.next = null;
+        this.source = null;
+        this.targets = null;
+        this.requiredCapabilities = 0;
+        this.queuedAt = 0;
+        if (this.tracer != null) {
+            this.tracer = null;
+            Arrays.fill(this.traceStamps, 0);
+        }
+    }
+}
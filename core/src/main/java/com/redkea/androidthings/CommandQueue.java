@@ -0,0 +1,67 @@
+package com.redkea.androidthings;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Lock-free multi-producer/single-consumer queue of commands.
+ * <p>
+ * Producers push onto an atomic stack through the intrusive {@link Command#next} link, so
+ * offering never allocates and never blocks. The single consumer detaches the whole stack with
+ * one atomic swap and reverses it, which restores the order in which the commands were offered.
+ */
+class CommandQueue {
+    private final AtomicReference<Command> top = new AtomicReference<>();
+
+    /**
+     * Adds a command. May be called from any thread.
+     */
+    void offer(Command command) {
+        Command current;
+        do {
+            current = this.top.get();
+            command.next = current;
+        } while (!this.top.compareAndSet(current, command));
+    }
+
+    boolean isEmpty() {
+        return this.top.get() == null;
+    }
+
+    /**
+     * Removes all queued commands. Must only be called from the consumer thread.
+     *
+     * @return The oldest command, linked through {@link Command#next} to the newer ones, or null
+     * if the queue is empty.
+     */
+    Command drain() {
+        Command command = this.top.getAndSet(null);
+        Command reversed = null;
+        while (command != null) {
+            Command next = command.next;
+            command.next = reversed;
+            reversed = command;
+            command = next;
+        }
+        return reversed;
+    }
+}
@@ -0,0 +1,75 @@
+package com.redkea.androidthings;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+enum CommandType {
+    UNDEFINED(0xFF),
+
+    WRITE_TO_DIGITAL_PIN(0),
+    WRITE_TO_ANALOG_PIN(1),
+    WRITE_TO_FUNCTION(2),
+    WELCOME(3),
+    SETUP_TIMERS(4),
+    PING(5),
+
+    READ_FROM_DIGITAL_PIN(100),
+    READ_FROM_ANALOG_PIN(101),
+    READ_FROM_FUNCTION(102),
+
+    DATA_SEND(200),
+    PONG(201),
+    DATA_SEND_BATCH(202),
+    BATCH_LAYOUT(203),
+    COMPRESSED(204),
+    DATA_SEND_SERIES(205);
+
+    private static final CommandType[] byCode = new CommandType[256];
+
+    static {
+        for (int i = 0; i < byCode.length; ++i) {
+            byCode[i] = UNDEFINED;
+        }
+        for (CommandType type : values()) {
+            byCode[type.code & 0xFF] = type;
+        }
+    }
+
+    private final byte code;
+
+    CommandType(int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * @return The byte identifying this type on the wire.
+     */
+    byte getCode() {
+        return this.code;
+    }
+
+    /**
+     * @return The type for the given wire byte, {@link #UNDEFINED} if it is unknown.
+     */
+    static CommandType fromCode(byte code) {
+        return byCode[code & 0xFF];
+    }
+}
@@ -0,0 +1,239 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * The compact frame encoding of protocol version 2.
+ * <p>
+ * A frame is {@code [type][varint payload length][varint parameter count][schema][values]}. The
+ * schema holds one 4-bit tag per parameter, two to a byte, low nibble first. Lengths and 16-bit
+ * integers are unsigned LEB128 varints, integers zigzag encoded first, so small values take a
+ * single byte. Booleans are carried in their tag and take no value byte at all. Compared to
+ * version 1 this saves the per-parameter tag bytes, most of the length bytes and most of the
+ * integer bytes.
+ */
+final class CompactCodec {
+    private static final int TAG_INT8 = 0;
+    private static final int TAG_INT16 = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_TRUE = 3;
+    private static final int TAG_FLOAT = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_BYTES = 6;
+
+    /** Payloads are limited like in version 1, so both encodings carry the same commands. */
+    static final int MAX_PAYLOAD = 0xFFFF;
+
+    private CompactCodec() {
+        /* do nothing - hiding constructor */
+    }
+
+    static int getFrameSize(Command command) {
+        int payload = getPayloadSize(command);
+        return 1 + varintSize(payload) + payload;
+    }
+
+    static void writeTo(Command command, ByteBuffer out) {
+        int count = command.getParamCount();
+        out.put(command.getCommandType().getCode());
+        putVarint(out, getPayloadSize(command));
+        putVarint(out, count);
+        for (int i = 0; i < count; i += 2) {
+            int schema = tagOf(command, i);
+            if (i + 1 < count) {
+                schema |= tagOf(command, i + 1) << 4;
+            }
+            out.put((byte) schema);
+        }
+        for (int i = 0; i < count; ++i) {
+            switch (command.getParamType(i)) {
+                case Command.TYPE_INT8:
+                    out.put(command.getInt8(i));
+                    break;
+                case Command.TYPE_INT16:
+                    putVarint(out, zigzag(command.getInt16(i)));
+                    break;
+                case Command.TYPE_FLOAT:
+                    out.putFloat(command.getFloat(i));
+                    break;
+                case Command.TYPE_STRING:
+                case Command.TYPE_BYTES:
+                    ByteBuffer data = command.getData(i);
+                    putVarint(out, data.remaining());
+                    out.put(data);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return The size of the frame starting at the given position, or -1 if its header is not
+     * complete yet.
+     * @throws IOException If the header is malformed or announces a payload that is too large.
+     */
+    static int peekFrameSize(ByteBuffer buffer, int start) throws IOException {
+        int end = buffer.limit();
+        int payload = 0;
+        for (int i = 0; i < 3; ++i) {
+            int position = start + 1 + i;
+            if (position >= end) {
+                return -1;
+            }
+            int b = buffer.get(position);
+            payload |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                if (payload > MAX_PAYLOAD) {
+                    throw new IOException("Frame payload of " + payload + " bytes is too large");
+                }
+                return 2 + i + payload;
+            }
+        }
+        throw new IOException("Malformed frame length");
+    }
+
+    /**
+     * Decodes one frame. The buffer has to be positioned at the start of the frame and limited to
+     * its end.
+     */
+    static void readFrom(Command command, ByteBuffer frame) throws IOException {
+        command.setCommandType(CommandType.fromCode(frame.get()));
+        getVarint(frame);
+        int count = getVarint(frame);
+        int schemaStart = frame.position();
+        int valuesStart = schemaStart + (count + 1) / 2;
+        if (count < 0 || valuesStart > frame.limit()) {
+            throw new IOException("Malformed frame schema");
+        }
+        frame.position(valuesStart);
+        for (int i = 0; i < count; ++i) {
+            int tag = (frame.get(schemaStart + i / 2) >> ((i & 1) * 4)) & 0x0F;
+            switch (tag) {
+                case TAG_INT8:
+                    command.addInt8(frame.get());
+                    break;
+                case TAG_INT16:
+                    command.addInt16((short) unzigzag(getVarint(frame)));
+                    break;
+                case TAG_FALSE:
+                    command.addBool(false);
+                    break;
+                case TAG_TRUE:
+                    command.addBool(true);
+                    break;
+                case TAG_FLOAT:
+                    command.addFloat(frame.getFloat());
+                    break;
+                case TAG_STRING:
+                    command.addData(Command.TYPE_STRING, frame, getVarint(frame));
+                    break;
+                case TAG_BYTES:
+                    command.addData(Command.TYPE_BYTES, frame, getVarint(frame));
+                    break;
+                default:
+                    throw new IOException("Unknown parameter tag " + tag);
+            }
+        }
+        if (frame.hasRemaining()) {
+            throw new IOException("Trailing bytes in frame");
+        }
+    }
+
+    private static int getPayloadSize(Command command) {
+        int count = command.getParamCount();
+        int size = varintSize(count) + (count + 1) / 2;
+        for (int i = 0; i < count; ++i) {
+            switch (command.getParamType(i)) {
+                case Command.TYPE_INT8:
+                    size += 1;
+                    break;
+                case Command.TYPE_INT16:
+                    size += varintSize(zigzag(command.getInt16(i)));
+                    break;
+                case Command.TYPE_FLOAT:
+                    size += 4;
+                    break;
+                case Command.TYPE_STRING:
+                case Command.TYPE_BYTES:
+                    int length = command.getData(i).remaining();
+                    size += varintSize(length) + length;
+                    break;
+            }
+        }
+        return size;
+    }
+
+    private static int tagOf(Command command, int index) {
+        switch (command.getParamType(index)) {
+            case Command.TYPE_INT8:
+                return TAG_INT8;
+            case Command.TYPE_INT16:
+                return TAG_INT16;
+            case Command.TYPE_BOOL:
+                return command.getBool(index) ? TAG_TRUE : TAG_FALSE;
+            case Command.TYPE_FLOAT:
+                return TAG_FLOAT;
+            case Command.TYPE_STRING:
+                return TAG_STRING;
+            default:
+                return TAG_BYTES;
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 21; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+}
@@ -0,0 +1,245 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * State of one client connection, attached to its {@link SelectionKey}. Only used from the
+ * thread of its {@link Reactor}.
+ */
+class Connection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final OutboundBuffer outbound = new OutboundBuffer();
+    private boolean writeInterest = false;
+    private int protocolVersion = Command.VERSION_1;
+    private FrameDeflater deflater = null;
+    // the WELCOME capabilities both sides share, written by the reactor thread only
+    private int capabilities = 0;
+    private final Metrics metrics;
+    private final int id;
+    // the outbound bytes last reported to the metrics
+    private int reportedOutbound = 0;
+
+    // heartbeat state, written by the reactor thread only
+    private boolean heartbeat = false;
+    private long lastReceivedAt = System.nanoTime();
+    private short pingSequence = 0;
+    // 0 while no heartbeat PING is outstanding
+    private long pingSentAt = 0;
+    // -1 until the first PONG arrived
+    private volatile long smoothedRtt = -1;
+    private volatile long rttVariance = 0;
+    /** Set while the connection is in the reactor's list of connections to flush. */
+    boolean dirty = false;
+    /** The reactor serving the connection, set before the connection is seen by other threads. */
+    Reactor reactor;
+
+    Connection(int id, SocketChannel channel, Selector selector, Metrics metrics) throws ClosedChannelException {
+        this.id = id;
+        this.channel = channel;
+        this.metrics = metrics;
+        this.key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * @return The number of the connection, counted from 0 since the network started.
+     */
+    int getId() {
+        return this.id;
+    }
+
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    FrameDecoder getDecoder() {
+        return this.decoder;
+    }
+
+    int getProtocolVersion() {
+        return this.protocolVersion;
+    }
+
+    /**
+     * Switches both directions to the given encoding, starting with the next frame.
+     */
+    void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        this.decoder.setVersion(protocolVersion);
+    }
+
+    void setCapabilities(int capabilities) {
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * @return Whether the peer announced all of the given WELCOME capabilities.
+     */
+    boolean hasCapabilities(int capabilities) {
+        return (this.capabilities & capabilities) == capabilities;
+    }
+
+    /**
+     * Compresses everything sent from now on, see {@link FrameDeflater}.
+     */
+    void enableCompression() {
+        if (this.deflater == null) {
+            this.deflater = new FrameDeflater();
+        }
+    }
+
+    /**
+     * @return The deflater of the connection, or null if it is not compressed.
+     */
+    FrameDeflater getDeflater() {
+        return this.deflater;
+    }
+
+    /**
+     * Lets the network send heartbeat PINGs to the connection, which the peer answers with PONGs.
+     */
+    void enableHeartbeat() {
+        this.heartbeat = true;
+    }
+
+    boolean isHeartbeatEnabled() {
+        return this.heartbeat;
+    }
+
+    void markReceived(long now) {
+        this.lastReceivedAt = now;
+    }
+
+    long getLastReceivedAt() {
+        return this.lastReceivedAt;
+    }
+
+    /**
+     * @return The sequence number for the next heartbeat PING, which is now outstanding.
+     */
+    short nextPing(long now) {
+        // a PING that is still unanswered is superseded; its PONG no longer counts
+        this.pingSentAt = now;
+        return ++this.pingSequence;
+    }
+
+    /**
+     * Takes an RTT sample from the PONG to the latest heartbeat PING, as in RFC 6298.
+     *
+     * @return The sample in nanoseconds, or -1 if the PONG answers an older PING.
+     */
+    long onPong(short sequence, long now) {
+        if (this.pingSentAt == 0 || sequence != this.pingSequence) {
+            return -1;
+        }
+        long rtt = now - this.pingSentAt;
+        this.pingSentAt = 0;
+        if (this.smoothedRtt < 0) {
+            this.smoothedRtt = rtt;
+            this.rttVariance = rtt / 2;
+        } else {
+            this.rttVariance = (3 * this.rttVariance + Math.abs(this.smoothedRtt - rtt)) / 4;
+            this.smoothedRtt = (7 * this.smoothedRtt + rtt) / 8;
+        }
+        return rtt;
+    }
+
+    /**
+     * @return The smoothed round-trip time in nanoseconds, or -1 if it has not been measured.
+     */
+    long getSmoothedRtt() {
+        return this.smoothedRtt;
+    }
+
+    /**
+     * @return The round-trip time variance in nanoseconds.
+     */
+    long getRttVariance() {
+        return this.rttVariance;
+    }
+
+    boolean hasPendingOutput() {
+        return !this.outbound.isEmpty();
+    }
+
+    boolean isOpen() {
+        return this.key.isValid();
+    }
+
+    /**
+     * Queues a reference to an encoded frame. Nothing is written before the next {@link #flush()}.
+     */
+    void enqueue(Frame frame) throws IOException {
+        if (this.deflater != null) {
+            this.deflater.append(frame, this.outbound, this.protocolVersion);
+        } else {
+            this.outbound.append(frame);
+        }
+    }
+
+    /**
+     * Writes as much pending output as the socket accepts and keeps the connection registered
+     * for {@link SelectionKey#OP_WRITE} only while something is left over. On a compressed
+     * connection, the frames queued since the last flush are compressed as one batch first.
+     */
+    void flush() throws IOException {
+        if (this.deflater != null) {
+            this.deflater.flush(this.outbound, this.protocolVersion);
+        }
+        this.metrics.recordWireOut(this.outbound.writeTo(this.channel));
+        reportOutbound();
+        boolean pending = !this.outbound.isEmpty();
+        if (pending != this.writeInterest) {
+            this.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            this.writeInterest = pending;
+        }
+    }
+
+    void close() {
+        this.decoder.release();
+        this.outbound.release();
+        reportOutbound();
+        if (this.deflater != null) {
+            this.deflater.end();
+        }
+        this.key.cancel();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void reportOutbound() {
+        int size = this.outbound.size();
+        if (size != this.reportedOutbound) {
+            this.metrics.recordOutbound(size - this.reportedOutbound);
+            this.reportedOutbound = size;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.redkea.androidthings;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * How the digital pin timers set up by the app read their inputs.
+ * <p>
+ * By default every timer polls its pin at the interval requested by the app and sends each
+ * sample, whether the level changed or not. With {@link #onChange(long, long)} the pin reports
+ * its edges instead: a value is only sent when it changes, right when it changes, and pulses
+ * shorter than the interval are no longer missed.
+ */
+public final class DigitalInputPolicy {
+    private static final DigitalInputPolicy POLLING = new DigitalInputPolicy(false, 0, 0);
+
+    private final boolean edgeTriggered;
+    private final long debounceMillis;
+    private final long heartbeatMillis;
+
+    private DigitalInputPolicy(boolean edgeTriggered, long debounceMillis, long heartbeatMillis) {
+        this.edgeTriggered = edgeTriggered;
+        this.debounceMillis = debounceMillis;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Polls every input at the interval of its timer.
+     */
+    public static DigitalInputPolicy polling() {
+        return POLLING;
+    }
+
+    /**
+     * Sends an input when its level changes.
+     *
+     * @param debounceMillis  How long a new level has to be stable before it is sent, 0 to send
+     *                        every edge immediately.
+     * @param heartbeatMillis Interval at which the current level is sent even if it did not change,
+     *                        0 to only send changes.
+     */
+    public static DigitalInputPolicy onChange(long debounceMillis, long heartbeatMillis) {
+        if (debounceMillis < 0 || heartbeatMillis < 0) {
+            throw new IllegalArgumentException("Negative debounce or heartbeat interval");
+        }
+        return new DigitalInputPolicy(true, debounceMillis, heartbeatMillis);
+    }
+
+    boolean isEdgeTriggered() {
+        return this.edgeTriggered;
+    }
+
+    long getDebounceMillis() {
+        return this.debounceMillis;
+    }
+
+    long getHeartbeatMillis() {
+        return this.heartbeatMillis;
+    }
+}
@@ -0,0 +1,162 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Answers the UDP discovery broadcasts of the apps on the network thread. The reply is built
+ * once; each source address gets a few replies in a burst and then {@link #REPLIES_PER_SECOND},
+ * so apps re-broadcasting in a tight loop cannot keep the device busy.
+ */
+class DiscoveryReceiver {
+    private static final byte[] DISCOVERY_REQUEST = "REDKEA_DISCOVERY_REQ".getBytes();
+    private static final byte[] DISCOVERY_REPLY = "REDKEA_DISCOVERY_REP".getBytes();
+    private static String TAG = "REDKEA";
+    private static int DISCOVERY_PORT = 20555;
+    /** Datagrams handled per selector wakeup, so a flood cannot starve the connections. */
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+    /** Replies each source may get in a burst, refilled at {@link #REPLIES_PER_SECOND}. */
+    private static final double REPLY_BURST = 4;
+    private static final double REPLIES_PER_SECOND = 2;
+    private static final int MAX_TRACKED_SOURCES = 256;
+
+    private final DatagramChannel channel;
+    private final Metrics metrics;
+    // sized to see datagrams longer than a request, which are still answered
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(512);
+    private final ByteBuffer reply;
+    // the token buckets of the latest sources, least recently seen first
+    private final Map<InetAddress, Bucket> sources = new LinkedHashMap<InetAddress, Bucket>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetAddress, Bucket> eldest) {
+            return size() > MAX_TRACKED_SOURCES;
+        }
+    };
+
+    DiscoveryReceiver(String deviceID, Metrics metrics) throws IOException {
+        this.metrics = metrics;
+        byte[] id = deviceID.getBytes();
+        this.reply = ByteBuffer.allocateDirect(DISCOVERY_REPLY.length + id.length);
+        this.reply.put(DISCOVERY_REPLY);
+        this.reply.put(id);
+        this.reply.flip();
+
+        this.channel = DatagramChannel.open();
+        this.channel.configureBlocking(false);
+        this.channel.socket().bind(new InetSocketAddress(DISCOVERY_PORT));
+    }
+
+    /**
+     * Lets the selector of the network thread wake up for discovery requests, see
+     * {@link #receive()}.
+     */
+    void register(Selector selector) throws ClosedChannelException {
+        this.channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    void close() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Answers the pending requests. Called by the network thread when the channel is readable.
+     */
+    void receive() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; ++i) {
+            this.receiveBuffer.clear();
+            SocketAddress source = this.channel.receive(this.receiveBuffer);
+            if (source == null) {
+                return;
+            }
+            this.receiveBuffer.flip();
+            if (!isRequest(this.receiveBuffer)) {
+                this.metrics.recordDiscovery(Metrics.DISCOVERY_INVALID);
+                continue;
+            }
+            if (!acquireToken(((InetSocketAddress) source).getAddress())) {
+                this.metrics.recordDiscovery(Metrics.DISCOVERY_RATE_LIMITED);
+                continue;
+            }
+            this.reply.rewind();
+            if (this.channel.send(this.reply, source) == 0) {
+                // the socket buffer is full, the app will ask again
+                this.metrics.recordDiscovery(Metrics.DISCOVERY_DROPPED);
+            } else {
+                this.metrics.recordDiscovery(Metrics.DISCOVERY_ANSWERED);
+            }
+        }
+    }
+
+    /**
+     * Requests may be followed by anything, e.g. a line break or a terminating zero some apps
+     * send.
+     */
+    private static boolean isRequest(ByteBuffer datagram) {
+        if (datagram.remaining() < DISCOVERY_REQUEST.length) {
+            return false;
+        }
+        for (int i = 0; i < DISCOVERY_REQUEST.length; ++i) {
+            if (datagram.get(i) != DISCOVERY_REQUEST[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean acquireToken(InetAddress address) {
+        long now = System.nanoTime();
+        Bucket bucket = this.sources.get(address);
+        if (bucket == null) {
+            bucket = new Bucket();
+            bucket.tokens = REPLY_BURST;
+            this.sources.put(address, bucket);
+        } else {
+            double elapsed = (now - bucket.updatedAt) / 1e9;
+            bucket.tokens = Math.min(REPLY_BURST, bucket.tokens + elapsed * REPLIES_PER_SECOND);
+        }
+        bucket.updatedAt = now;
+        if (bucket.tokens < 1) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long updatedAt;
+    }
+}
@@ -20,20 +20,24 @@ package com.redkea.androidthings;
     along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
 */
 
-public class Sender {
-    private Network network;
-    private String widgetID;
-
-    Sender(Network network, String widgetID) {
-        this.network = network;
-        this.widgetID = widgetID;
-    }
-
-    public void sendToTextOutput(String text) {
-        Command command = Command.obtain();
-        command.setCommandType(CommandType.DATA_SEND);
-        command.addString(this.widgetID);
-        command.addString(text);
-        this.network.sendCommand(command);
-    }
+/**
+ * Where the receive function of a key runs. Whatever the mode, the calls for one key are made one
+ * after the other in the order the frames arrived.
+ */
+public enum DispatchMode {
+    /**
+     * On the callback executor passed to the {@link Manager}, the main thread in an Android app.
+     */
+    MAIN_THREAD,
+
+    /**
+     * On a pool of worker threads shared by all keys in this mode, one per processor, so
+     * different keys run in parallel.
+     */
+    WORKER_POOL,
+
+    /**
+     * On a thread of its own, for receivers that block or take long.
+     */
+    DEDICATED_THREAD
 }
@@ -0,0 +1,213 @@
+package com.redkea.androidthings;
+
+import com.redkea.androidthings.PeripheralBackend.GpioPin;
+import com.redkea.androidthings.PeripheralBackend.PwmPin;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+class Dispatcher {
+    private static String TAG = "REDKEA";
+
+    private Manager manager;
+    private PeripheralBackend backend;
+    private Executor callbackExecutor;
+    private Metrics metrics;
+    private ExecutorService workerPool = null;
+    private Map<String, Receiver> receivers = new ConcurrentHashMap<>();
+    // guarded by this, since every reactor thread writes pins
+    private Map<String, GpioPin> gpioMap = new HashMap<>();
+    private Map<String, PwmPin> pwmMap = new HashMap<>();
+
+    Dispatcher(Manager manager, PeripheralBackend backend, Executor callbackExecutor, Metrics metrics) {
+        this.manager = manager;
+        this.backend = backend;
+        this.callbackExecutor = callbackExecutor;
+        this.metrics = metrics;
+    }
+
+    void dispatch(final Command command) throws IOException {
+        command.stamp(Tracer.STAGE_DISPATCHED);
+        if (command.getCommandType() == CommandType.SETUP_TIMERS) {
+            this.manager.setupTimers(command);
+        } else if (command.getCommandType() == CommandType.WRITE_TO_DIGITAL_PIN) {
+            String target = command.getString(0);
+            if (command.getParamType(1) == Command.TYPE_BOOL) {
+                writeToGpio(target, command.getBool(1));
+            } else if (command.getParamType(1) == Command.TYPE_INT16) {
+                writeToPwm(target, command.getInt16(1));
+            }
+            command.stamp(Tracer.STAGE_WRITTEN);
+        } else if (command.getCommandType() == CommandType.WRITE_TO_FUNCTION) {
+            String key = command.getString(0);
+            Receiver receiver = this.receivers.get(key);
+            if (receiver == null) {
+                Log.d(TAG, "No receiver for key " + key);
+            } else {
+                // the command is recycled once the user function has seen it
+                receiver.offer(command);
+                return;
+            }
+        }
+        command.recycle();
+    }
+
+    synchronized void registerReceiver(final String key, ReceiveFunction receiveFunction, DispatchMode mode,
+                                   InboundPolicy policy) {
+        Receiver receiver;
+        if (mode == DispatchMode.WORKER_POOL) {
+            receiver = new Receiver(key, receiveFunction, getWorkerPool(), null, policy, this.metrics);
+        } else if (mode == DispatchMode.DEDICATED_THREAD) {
+            ExecutorService thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "redkeaReceiver-" + key);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            receiver = new Receiver(key, receiveFunction, thread, thread, policy, this.metrics);
+        } else {
+            receiver = new Receiver(key, receiveFunction, this.callbackExecutor, null, policy, this.metrics);
+        }
+        Receiver previous = this.receivers.put(key, receiver);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    synchronized void unregisterReceiver(String key) {
+        Receiver receiver = this.receivers.remove(key);
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    ReceiverStats getReceiverStats(String key) {
+        Receiver receiver = this.receivers.get(key);
+        return (receiver != null) ? receiver.getStats() : null;
+    }
+
+    /**
+     * Stops the threads of all receivers.
+     */
+    synchronized void shutdown() {
+        reset();
+        for (Receiver receiver : this.receivers.values()) {
+            receiver.close();
+        }
+        if (this.workerPool != null) {
+            this.workerPool.shutdown();
+            this.workerPool = null;
+        }
+    }
+
+    private ExecutorService getWorkerPool() {
+        if (this.workerPool == null) {
+            final AtomicInteger count = new AtomicInteger();
+            int threads = Runtime.getRuntime().availableProcessors();
+            this.workerPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "redkeaWorker-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.workerPool;
+    }
+
+    /**
+     * Drops the frames still queued for the receivers and closes all output pins.
+     */
+    synchronized void reset() {
+        for (Receiver receiver : this.receivers.values()) {
+            receiver.clear();
+        }
+
+        for (GpioPin gpio : this.gpioMap.values()) {
+            try {
+                gpio.close();
+            } catch (IOException e) {
+                // ignore
+                Log.d(TAG, "Error closing gpio: " + e.toString());
+            }
+        }
+        this.gpioMap.clear();
+
+        for (PwmPin pwm : this.pwmMap.values()) {
+            try {
+                pwm.close();
+            } catch (IOException e) {
+                // ignore
+                Log.d(TAG, "Error closing pwm: " + e.toString());
+            }
+        }
+        this.pwmMap.clear();
+    }
+
+    private synchronized void writeToPwm(String target, short value) throws IOException {
+        PwmPin pwm;
+        if (!this.pwmMap.containsKey(target)) {
+            pwm = this.backend.openPwm(target);
+            try {
+                pwm.setEnabled(false);
+                pwm.setFrequencyHz(500);
+                pwm.setEnabled(true);
+            } catch (IOException e) {
+                pwm.close();
+                throw e;
+            }
+            this.pwmMap.put(target, pwm);
+        } else {
+            pwm = this.pwmMap.get(target);
+        }
+        pwm.setDutyCycle(value);
+    }
+
+    private synchronized void writeToGpio(String target, boolean value) throws IOException {
+        GpioPin gpio;
+        if (!this.gpioMap.containsKey(target)) {
+            gpio = this.backend.openGpio(target);
+            try {
+                gpio.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+            } catch (IOException e) {
+                gpio.close();
+                throw e;
+            }
+            this.gpioMap.put(target, gpio);
+        } else {
+            gpio = this.gpioMap.get(target);
+        }
+        gpio.setValue(value);
+    }
+}
@@ -0,0 +1,120 @@
+package com.redkea.androidthings;
+
+import com.redkea.androidthings.PeripheralBackend.EdgeListener;
+import com.redkea.androidthings.PeripheralBackend.GpioPin;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Edge-triggered digital input shared by all timers reading the same pin.
+ * <p>
+ * Edges arrive on a thread of the backend. Without debouncing each edge that changes the level is
+ * sent to the subscribers of all timers right away. With debouncing the level is only sent once no
+ * further edge arrived for the debounce window; the check runs on the {@link TimingWheel}.
+ */
+class EdgeInput implements EdgeListener, Runnable {
+    private static String TAG = "REDKEA";
+
+    private final GpioPin gpio;
+    private final Network network;
+    private final TimingWheel wheel;
+    private final long debounceNanos;
+    private final List<Timers.Timer> timers = new CopyOnWriteArrayList<>();
+    private boolean value;
+    private long lastEdge;
+    private boolean debouncePending = false;
+    private boolean lastSent;
+
+    EdgeInput(GpioPin gpio, Network network, TimingWheel wheel, long debounceMillis) throws IOException {
+        this.gpio = gpio;
+        this.network = network;
+        this.wheel = wheel;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.value = gpio.getValue();
+        this.lastSent = this.value;
+        this.gpio.setEdgeListener(this);
+    }
+
+    void add(Timers.Timer timer) {
+        this.timers.add(timer);
+    }
+
+    void remove(Timers.Timer timer) {
+        this.timers.remove(timer);
+    }
+
+    boolean isEmpty() {
+        return this.timers.isEmpty();
+    }
+
+    /**
+     * Stops listening for edges. The pin itself stays open.
+     */
+    void stop() {
+        try {
+            this.gpio.setEdgeListener(null);
+        } catch (IOException e) {
+            // ignore
+            Log.d(TAG, "Error removing edge listener: " + e.toString());
+        }
+    }
+
+    @Override
+    public synchronized void onEdge(GpioPin pin, boolean value, long timestampNanos) {
+        this.value = value;
+        this.lastEdge = timestampNanos;
+        if (this.debounceNanos == 0) {
+            deliver();
+        } else if (!this.debouncePending) {
+            this.debouncePending = true;
+            this.wheel.schedule(this, this.debounceNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Debounce check, sends the level if it has been stable for the whole window.
+     */
+    @Override
+    public synchronized void run() {
+        long quiet = this.wheel.nanoTime() - this.lastEdge;
+        if (quiet < this.debounceNanos) {
+            this.wheel.schedule(this, this.debounceNanos - quiet, TimeUnit.NANOSECONDS);
+            return;
+        }
+        this.debouncePending = false;
+        deliver();
+    }
+
+    private void deliver() {
+        if (this.lastSent == this.value) {
+            return;
+        }
+        this.lastSent = this.value;
+        for (Timers.Timer timer : this.timers) {
+            Timers.sendPinValue(this.network, timer.widgetID, this.value, timer.subscribers);
+        }
+    }
+}
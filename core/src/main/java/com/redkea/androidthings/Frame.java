@@ -0,0 +1,118 @@
+package com.redkea.androidthings;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * An encoded frame shared by every connection it is sent to.
+ * <p>
+ * A command is encoded once into a chunk borrowed from the {@link BufferSlab}. Each connection
+ * that queues the frame holds a reference and gives it back once the frame has been written or
+ * the connection is closed; the chunk goes back to the slab with the last reference.
+ */
+final class Frame {
+    private static final Pools.ConcurrentPool<Frame> pool = new Pools.ConcurrentPool<>(32, 256);
+
+    private final AtomicInteger refCount = new AtomicInteger();
+    private BufferSlab.Chunk chunk = null;
+    private int length = 0;
+
+    private Frame() {
+    }
+
+    static Pools.ConcurrentPool<Frame> getPool() {
+        return pool;
+    }
+
+    /**
+     * @return A frame holding the command encoded in protocol version 1 with a reference count of
+     * one.
+     */
+    static Frame encode(Command command) {
+        return encode(command, Command.VERSION_1);
+    }
+
+    /**
+     * @return A frame holding the command encoded in the given protocol version with a reference
+     * count of one.
+     */
+    static Frame encode(Command command, int version) {
+        Frame frame = pool.acquire();
+        if (frame == null) {
+            frame = new Frame();
+        }
+        frame.length = command.getFrameSize(version);
+        frame.chunk = BufferSlab.acquire(frame.length);
+        command.writeTo(frame.chunk.buffer, version);
+        frame.refCount.set(1);
+        return frame;
+    }
+
+    /**
+     * @return A frame holding a copy of the given, already encoded bytes with a reference count of
+     * one.
+     */
+    static Frame copyOf(byte[] bytes, int offset, int length) {
+        Frame frame = pool.acquire();
+        if (frame == null) {
+            frame = new Frame();
+        }
+        frame.length = length;
+        frame.chunk = BufferSlab.acquire(length);
+        frame.chunk.buffer.put(bytes, offset, length);
+        frame.refCount.set(1);
+        return frame;
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * @return The number of references still held, 0 once the frame is back in the pool.
+     */
+    int getRefCount() {
+        return this.refCount.get();
+    }
+
+    void retain() {
+        this.refCount.incrementAndGet();
+    }
+
+    void release() {
+        if (this.refCount.decrementAndGet() == 0) {
+            BufferSlab.release(this.chunk);
+            this.chunk = null;
+            this.length = 0;
+            pool.release(this);
+        }
+    }
+
+    /**
+     * @return The shared view of the bytes from the given offset to the end of the frame. Only one
+     * writer may use it at a time.
+     */
+    ByteBuffer view(int offset) {
+        return this.chunk.view(offset, this.length - offset);
+    }
+}
@@ -0,0 +1,197 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Streaming decoder for the frames of one connection.
+ * <p>
+ * Bytes are accumulated across reads, so a frame split over several TCP segments is kept until it
+ * is complete, and several frames arriving in one segment are all handed out from a single read.
+ * Usage on the selector thread:
+ * <pre>
+ * decoder.readFrom(channel);
+ * Command command;
+ * while ((command = decoder.nextFrame()) != null) {
+ *     ...
+ * }
+ * </pre>
+ */
+class FrameDecoder {
+    private static final int READ_CAPACITY = 2048;
+
+    private BufferSlab.Chunk chunk = null;
+    private ByteBuffer buffer = null;
+    private boolean draining = false;
+    private int version = Command.VERSION_1;
+    private int lastFrameStart = 0;
+    private int lastFrameSize = 0;
+
+    /**
+     * Switches the encoding expected from the next frame on.
+     */
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Reads whatever the channel has available and prepares the buffered bytes for
+     * {@link #nextFrame()}.
+     *
+     * @return The number of bytes read.
+     * @throws IOException If the channel has been closed by the peer.
+     */
+    int readFrom(ReadableByteChannel rbc) throws IOException {
+        prepare();
+        int bytesRead = rbc.read(this.buffer);
+        if (bytesRead == -1) {
+            throw new IOException("ByteChannel has been closed");
+        }
+        this.buffer.flip();
+        this.draining = true;
+        return bytesRead;
+    }
+
+    /**
+     * Buffers the given bytes like {@link #readFrom(ReadableByteChannel)} does with the bytes of a
+     * channel.
+     */
+    void append(byte[] bytes, int offset, int length) {
+        prepare();
+        if (this.buffer.remaining() < length) {
+            this.buffer.flip();
+            ensureCapacity(this.buffer.remaining() + length);
+            this.buffer.compact();
+        }
+        this.buffer.put(bytes, offset, length);
+        this.buffer.flip();
+        this.draining = true;
+    }
+
+    /**
+     * @return The next complete frame, or null if the buffered bytes do not hold one yet. The
+     * caller owns the returned command and has to recycle it.
+     * @throws IOException If the buffered bytes are not a valid frame.
+     */
+    Command nextFrame() throws IOException {
+        if (!this.draining) {
+            return null;
+        }
+        int start = this.buffer.position();
+        int frameSize = peekFrameSize(start);
+        if (frameSize != -1) {
+            if (this.buffer.remaining() >= frameSize) {
+                int limit = this.buffer.limit();
+                this.buffer.limit(start + frameSize);
+                Command command = Command.obtain();
+                try {
+                    if (this.version == Command.VERSION_2) {
+                        CompactCodec.readFrom(command, this.buffer);
+                    } else {
+                        command.readFrom(this.buffer);
+                    }
+                } catch (RuntimeException e) {
+                    command.recycle();
+                    throw new IOException("Malformed frame", e);
+                } catch (IOException e) {
+                    command.recycle();
+                    throw e;
+                }
+                this.buffer.limit(limit);
+                this.buffer.position(start + frameSize);
+                this.lastFrameStart = start;
+                this.lastFrameSize = frameSize;
+                return command;
+            }
+            ensureCapacity(frameSize);
+        }
+        this.draining = false;
+        if (!this.buffer.hasRemaining()) {
+            // nothing partial is left, so the connection holds no memory while it is idle
+            release();
+        } else {
+            this.buffer.compact();
+        }
+        return null;
+    }
+
+    /**
+     * @return The encoded size of the frame last returned by {@link #nextFrame()}.
+     */
+    int getLastFrameSize() {
+        return this.lastFrameSize;
+    }
+
+    /**
+     * @return The shared view of the encoded frame last returned by {@link #nextFrame()}, valid
+     * until the next call to this decoder.
+     */
+    ByteBuffer getLastFrame() {
+        return this.chunk.view(this.lastFrameStart, this.lastFrameSize);
+    }
+
+    /**
+     * Gives the buffered bytes back to the slab, e.g. when the connection is closed.
+     */
+    void release() {
+        if (this.chunk != null) {
+            BufferSlab.release(this.chunk);
+            this.chunk = null;
+            this.buffer = null;
+        }
+        this.draining = false;
+    }
+
+    private void prepare() {
+        if (this.chunk == null) {
+            this.chunk = BufferSlab.acquire(READ_CAPACITY);
+            this.buffer = this.chunk.buffer;
+        } else if (this.draining) {
+            this.buffer.compact();
+            this.draining = false;
+        }
+    }
+
+    private int peekFrameSize(int start) throws IOException {
+        if (this.version == Command.VERSION_2) {
+            return CompactCodec.peekFrameSize(this.buffer, start);
+        }
+        if (this.buffer.remaining() < Command.HEADER_SIZE) {
+            return -1;
+        }
+        return Command.HEADER_SIZE + (this.buffer.getShort(start + 1) & 0xFFFF);
+    }
+
+    private void ensureCapacity(int frameSize) {
+        if (frameSize <= this.buffer.capacity()) {
+            return;
+        }
+        BufferSlab.Chunk grown = BufferSlab.acquire(frameSize);
+        grown.buffer.put(this.buffer);
+        grown.buffer.flip();
+        BufferSlab.release(this.chunk);
+        this.chunk = grown;
+        this.buffer = grown.buffer;
+    }
+}
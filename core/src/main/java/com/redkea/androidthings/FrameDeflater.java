@@ -0,0 +1,156 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * The sending side of a compressed connection.
+ * <p>
+ * Frames are collected until the end of the network loop. The whole batch is then run through one
+ * deflate stream that lives as long as the connection, so every batch is compressed against the
+ * frames sent before it, and sync flushed so the peer can decode it right away. The compressed
+ * bytes go out as {@link CommandType#COMPRESSED} frames, which {@link FrameInflater} turns back
+ * into the original frames.
+ * <p>
+ * Batches below {@link #MIN_BATCH} bytes are sent as they are, since deflate would not save
+ * anything on them. While batches do not shrink below {@link #MAX_RATIO} of their size, e.g.
+ * because the data is already compressed, compression is suspended for {@link #BACKOFF_BATCHES}
+ * batches to save the CPU time.
+ */
+class FrameDeflater {
+    private static final int MIN_BATCH = 96;
+    private static final int MAX_BATCH = 32 * 1024;
+    private static final double MAX_RATIO = 0.9;
+    private static final int BACKOFF_BATCHES = 64;
+    /** Room for the header and the bytes parameter of a COMPRESSED frame in either version. */
+    private static final int MAX_CHUNK = 0xFFFF - 16;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private byte[] input = new byte[MIN_BATCH * 4];
+    private final byte[] output = new byte[4096];
+    private int inputLength = 0;
+    private double ratio = 0.0;
+    private int backoff = 0;
+
+    private long bytesIn = 0;
+    private long bytesOut = 0;
+    private long nanos = 0;
+
+    /**
+     * Adds the frame to the current batch, compressing the batch early if it grows too large.
+     */
+    void append(Frame frame, OutboundBuffer outbound, int version) throws IOException {
+        int length = frame.length();
+        if (this.inputLength + length > this.input.length) {
+            if (this.inputLength > 0 && this.inputLength + length > MAX_BATCH) {
+                flush(outbound, version);
+            }
+            if (this.inputLength + length > this.input.length) {
+                byte[] grown = new byte[Math.max(this.inputLength + length, this.input.length * 2)];
+                System.arraycopy(this.input, 0, grown, 0, this.inputLength);
+                this.input = grown;
+            }
+        }
+        frame.view(0).get(this.input, this.inputLength, length);
+        this.inputLength += length;
+    }
+
+    /**
+     * Ends the current batch and queues it, compressed or not.
+     */
+    void flush(OutboundBuffer outbound, int version) throws IOException {
+        if (this.inputLength == 0) {
+            return;
+        }
+        int length = this.inputLength;
+        this.inputLength = 0;
+        this.bytesIn += length;
+        if (length < MIN_BATCH || this.backoff > 0) {
+            if (this.backoff > 0) {
+                this.backoff--;
+            }
+            this.bytesOut += length;
+            append(outbound, Frame.copyOf(this.input, 0, length));
+            return;
+        }
+
+        long start = System.nanoTime();
+        int compressed = 0;
+        this.deflater.setInput(this.input, 0, length);
+        int n;
+        do {
+            n = this.deflater.deflate(this.output, 0, Math.min(this.output.length, MAX_CHUNK), Deflater.SYNC_FLUSH);
+            if (n > 0) {
+                Command command = Command.obtain();
+                command.setCommandType(CommandType.COMPRESSED);
+                command.addBytes(this.output, 0, n);
+                Frame frame = Frame.encode(command, version);
+                command.recycle();
+                compressed += frame.length();
+                append(outbound, frame);
+            }
+        } while (n == this.output.length);
+        this.nanos += System.nanoTime() - start;
+        this.bytesOut += compressed;
+
+        // a moving average, so a single incompressible batch does not switch compression off
+        this.ratio = 0.75 * this.ratio + 0.25 * compressed / length;
+        if (this.ratio > MAX_RATIO) {
+            this.backoff = BACKOFF_BATCHES;
+            this.ratio = 0.0;
+        }
+    }
+
+    /**
+     * @return The number of frame bytes handed to this deflater.
+     */
+    long getBytesIn() {
+        return this.bytesIn;
+    }
+
+    /**
+     * @return The number of bytes queued for the wire in their place.
+     */
+    long getBytesOut() {
+        return this.bytesOut;
+    }
+
+    /**
+     * @return The time spent compressing, in nanoseconds.
+     */
+    long getNanos() {
+        return this.nanos;
+    }
+
+    void end() {
+        this.deflater.end();
+    }
+
+    private static void append(OutboundBuffer outbound, Frame frame) throws IOException {
+        try {
+            outbound.append(frame);
+        } finally {
+            frame.release();
+        }
+    }
+}
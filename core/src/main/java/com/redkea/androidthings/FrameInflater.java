@@ -0,0 +1,83 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * The receiving side of a compressed connection, see {@link FrameDeflater}. It inflates the
+ * payload of {@link CommandType#COMPRESSED} frames into a decoder of its own, which then yields
+ * the original frames.
+ */
+class FrameInflater {
+    private final Inflater inflater = new Inflater(true);
+    private final FrameDecoder decoder = new FrameDecoder();
+    private byte[] input = new byte[1024];
+    private final byte[] output = new byte[4096];
+
+    /**
+     * Sets the encoding of the frames inside the compressed stream.
+     */
+    void setVersion(int version) {
+        this.decoder.setVersion(version);
+    }
+
+    /**
+     * Inflates the payload of the compressed frame. The frames it completes are returned by
+     * {@link #nextFrame()}.
+     */
+    void inflate(Command compressed) throws IOException {
+        ByteBuffer data = compressed.getData(0);
+        int length = data.remaining();
+        if (length > this.input.length) {
+            this.input = new byte[Math.max(length, this.input.length * 2)];
+        }
+        data.get(this.input, 0, length);
+        this.inflater.setInput(this.input, 0, length);
+        try {
+            int n;
+            while ((n = this.inflater.inflate(this.output)) > 0) {
+                this.decoder.append(this.output, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed compressed frame", e);
+        }
+        if (this.inflater.finished()) {
+            throw new IOException("Compressed stream ended");
+        }
+    }
+
+    /**
+     * @return The next inflated frame, or null if none is complete. The caller owns the returned
+     * command and has to recycle it.
+     */
+    Command nextFrame() throws IOException {
+        return this.decoder.nextFrame();
+    }
+
+    void end() {
+        this.inflater.end();
+        this.decoder.release();
+    }
+}
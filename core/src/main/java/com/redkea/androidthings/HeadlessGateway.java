@@ -0,0 +1,157 @@
+package com.redkea.androidthings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Runs the library on a plain JVM against the {@link SimulatedBackend}, with the same receivers
+ * and senders as the sample app. Apps and load generators can connect to it like to a board,
+ * which makes it possible to soak-test throughput and latency on any Linux machine.
+ * <p>
+ * Usage: {@code HeadlessGateway [deviceID]}
+ */
+public final class HeadlessGateway {
+    private static String TAG = "REDKEA";
+
+    private HeadlessGateway() {
+        /* do nothing - hiding constructor */
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final String deviceID = (args.length > 0) ? args[0] : "headless-gateway";
+
+        // a single callback thread keeps the ordering guarantees of an Android main looper
+        ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+        final SimulatedBackend backend = new SimulatedBackend();
+        final Manager manager = new Manager(deviceID, backend, callbackExecutor);
+
+        manager.setConnectionEventListener(new ConnectionEventListener() {
+            @Override
+            public void onConnect() {
+                Log.i(TAG, "Connected to App");
+            }
+
+            @Override
+            public void onDisconnect() {
+                Log.i(TAG, "Disconnected from App");
+            }
+        });
+
+        manager.registerReceiver("onShake", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                Log.d(TAG, "Shake detected");
+            }
+        });
+
+        manager.registerReceiver("onSlide", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                Log.d(TAG, "Slider value: " + parser.readFromSlider());
+            }
+        }, DispatchMode.MAIN_THREAD, InboundPolicy.latestValue());
+
+        manager.registerReceiver("onTouch", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                Log.d(TAG, "Touch value: " + parser.readFromTouch());
+            }
+        });
+
+        manager.registerSender("onTextUpdate", new SendFunction() {
+            int count = 0;
+
+            @Override
+            public void onSend(Sender sender) {
+                sender.sendToTextOutput("From onTextUpdate " + String.valueOf(count++));
+            }
+        });
+
+        // a JSON status blob like the ones text console dashboards show
+        manager.registerSender("onStatus", new SendFunction() {
+            final long started = System.currentTimeMillis();
+            int count = 0;
+
+            @Override
+            public void onSend(Sender sender) {
+                Runtime runtime = Runtime.getRuntime();
+                sender.sendToTextOutput("{\"device\":\"" + deviceID + "\",\"seq\":" + count++
+                        + ",\"uptimeMillis\":" + (System.currentTimeMillis() - this.started)
+                        + ",\"freeMemory\":" + runtime.freeMemory()
+                        + ",\"totalMemory\":" + runtime.totalMemory()
+                        + ",\"threads\":" + Thread.activeCount() + ",\"status\":\"ok\"}");
+            }
+        });
+
+        // a 1 kHz sine sensor for chart widgets, sent as one series frame per call
+        manager.registerSender("onChart", new SendFunction() {
+            final float[] values = new float[SampleBatch.MAX_SAMPLES];
+            long sampled = System.nanoTime() / 1000000;
+
+            @Override
+            public void onSend(Sender sender) {
+                long now = System.nanoTime() / 1000000;
+                int count = (int) Math.min(this.values.length, now - this.sampled);
+                for (int i = 0; i < count; ++i) {
+                    this.values[i] = (float) Math.sin((now - count + i) * 2 * Math.PI / 1000);
+                }
+                this.sampled = now;
+                sender.sendSeries(this.values, 0, count, 1, TimeUnit.MILLISECONDS);
+            }
+        });
+
+        // -Dredkea.record=DIR records all frames for SessionReplay
+        String recordDirectory = System.getProperty("redkea.record");
+        if (recordDirectory != null) {
+            manager.startRecording(new File(recordDirectory));
+        }
+
+        // -Dredkea.trace=FILE traces every 100th received command and writes the traces on exit
+        final String traceFile = System.getProperty("redkea.trace");
+        if (traceFile != null) {
+            manager.setTracing(100);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                manager.stop();
+                if (traceFile != null) {
+                    try {
+                        Log.i(TAG, "Wrote " + manager.dumpTrace(new File(traceFile)) + " traces to " + traceFile);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not write traces", e);
+                    }
+                }
+            }
+        });
+
+        manager.setMetricsDump(60, TimeUnit.SECONDS);
+        manager.start();
+        Log.i(TAG, "Headless gateway " + deviceID + " running");
+        Thread.currentThread().join();
+    }
+}
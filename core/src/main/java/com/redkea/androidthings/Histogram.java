@@ -0,0 +1,141 @@
+package com.redkea.androidthings;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Log-linear histogram of non-negative values, usually latencies in nanoseconds.
+ * <p>
+ * Values below 64 are counted exactly; above that every power of two is split into 32 linear
+ * sub-buckets, which keeps the relative error of reported percentiles around 3%, like an HDR
+ * histogram with two significant digits. Recording is lock-free and never allocates, so it can be
+ * done from any thread on the hot path.
+ */
+final class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_VALUES = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = EXACT_VALUES + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(indexOf(value));
+        this.totalCount.incrementAndGet();
+        this.sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = this.max.get())) {
+            if (this.max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    long getCount() {
+        return this.totalCount.get();
+    }
+
+    long getMax() {
+        return this.max.get();
+    }
+
+    double getMean() {
+        long count = this.totalCount.get();
+        return (count == 0) ? 0 : (double) this.sum.get() / count;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The highest value equivalent to the value at the given percentile, or 0 if nothing
+     * has been recorded.
+     */
+    long getValueAtPercentile(double percentile) {
+        long count = this.totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Adds all values recorded in the other histogram to this one.
+     */
+    void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; ++i) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                this.counts.addAndGet(i, count);
+            }
+        }
+        this.totalCount.addAndGet(other.totalCount.get());
+        this.sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long currentMax;
+        while (otherMax > (currentMax = this.max.get())) {
+            if (this.max.compareAndSet(currentMax, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            this.counts.set(i, 0);
+        }
+        this.totalCount.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return EXACT_VALUES + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < EXACT_VALUES) {
+            return index;
+        }
+        int shift = (index - EXACT_VALUES) / SUB_BUCKETS + 1;
+        long subBucket = (index - EXACT_VALUES) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.redkea.androidthings;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * What happens to the frames of a receiver that arrive while earlier ones are still waiting for
+ * the receive function, e.g. while the user drags a slider faster than the callback keeps up.
+ */
+public final class InboundPolicy {
+    /**
+     * The most frames waiting for a receive function under {@link #deliverAll()}, which keeps the
+     * memory of a receiver constant even if its function stops returning.
+     */
+    public static final int DELIVER_ALL_BOUND = 1024;
+
+    private static final InboundPolicy DELIVER_ALL = new InboundPolicy(DELIVER_ALL_BOUND);
+    private static final InboundPolicy LATEST_VALUE = new InboundPolicy(1);
+
+    private final int bound;
+
+    private InboundPolicy(int bound) {
+        this.bound = bound;
+    }
+
+    /**
+     * Every frame reaches the receive function, as long as it does not fall behind by more than
+     * {@link #DELIVER_ALL_BOUND} frames; beyond that the oldest are dropped and counted in the
+     * {@link ReceiverStats}. This is the default.
+     */
+    public static InboundPolicy deliverAll() {
+        return DELIVER_ALL;
+    }
+
+    /**
+     * Only the newest waiting frame reaches the receive function, older ones are dropped, like
+     * {@code dropOldest(1)}. Suits sliders and other widgets that send their current state.
+     */
+    public static InboundPolicy latestValue() {
+        return LATEST_VALUE;
+    }
+
+    /**
+     * At most the given number of frames wait for the receive function; when another one arrives,
+     * the oldest is dropped.
+     */
+    public static InboundPolicy dropOldest(int bound) {
+        if (bound < 1) {
+            throw new IllegalArgumentException("Bound must be at least 1");
+        }
+        return new InboundPolicy(bound);
+    }
+
+    int getBound() {
+        return this.bound;
+    }
+}
@@ -0,0 +1,60 @@
+package com.redkea.androidthings;
+
+import java.util.Locale;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * A copy of a latency histogram, in nanoseconds, as part of a {@link MetricsSnapshot}.
+ */
+public final class LatencyStats {
+    private final Histogram histogram = new Histogram();
+
+    LatencyStats(Histogram source) {
+        this.histogram.add(source);
+    }
+
+    public long getCount() {
+        return this.histogram.getCount();
+    }
+
+    public double getMean() {
+        return this.histogram.getMean();
+    }
+
+    public long getMax() {
+        return this.histogram.getMax();
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+        return this.histogram.getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                getCount(), getMean() / 1000.0, getValueAtPercentile(50) / 1000.0,
+                getValueAtPercentile(99) / 1000.0, getMax() / 1000.0);
+    }
+}
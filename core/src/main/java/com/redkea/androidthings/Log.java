@@ -0,0 +1,92 @@
+package com.redkea.androidthings;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Minimal replacement for {@code android.util.Log}. On Android the calls go to
+ * {@code android.util.Log}, found by reflection so this module keeps no Android dependency, and
+ * debug messages show up in logcat as before. On a plain JVM they go to {@code java.util.logging},
+ * where debug messages are logged at {@link Level#FINE}.
+ */
+final class Log {
+    // the methods of android.util.Log, or null on a plain JVM
+    private static final Method ANDROID_D = androidMethod("d", String.class, String.class);
+    private static final Method ANDROID_I = androidMethod("i", String.class, String.class);
+    private static final Method ANDROID_W = androidMethod("w", String.class, String.class);
+    private static final Method ANDROID_W_THROWABLE = androidMethod("w", String.class, String.class,
+            Throwable.class);
+
+    private Log() {
+        /* do nothing - hiding constructor */
+    }
+
+    static void d(String tag, String msg) {
+        if (!callAndroid(ANDROID_D, tag, msg)) {
+            Logger.getLogger(tag).log(Level.FINE, msg);
+        }
+    }
+
+    static void i(String tag, String msg) {
+        if (!callAndroid(ANDROID_I, tag, msg)) {
+            Logger.getLogger(tag).log(Level.INFO, msg);
+        }
+    }
+
+    static void w(String tag, String msg) {
+        if (!callAndroid(ANDROID_W, tag, msg)) {
+            Logger.getLogger(tag).log(Level.WARNING, msg);
+        }
+    }
+
+    static void w(String tag, String msg, Throwable tr) {
+        if (!callAndroid(ANDROID_W_THROWABLE, tag, msg, tr)) {
+            Logger.getLogger(tag).log(Level.WARNING, msg, tr);
+        }
+    }
+
+    private static Method androidMethod(String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName("android.util.Log").getMethod(name, parameterTypes);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether the message went to {@code android.util.Log}.
+     */
+    private static boolean callAndroid(Method method, Object... args) {
+        if (method == null) {
+            return false;
+        }
+        try {
+            method.invoke(null, args);
+            return true;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.redkea.androidthings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+public class Manager {
+    private static String TAG = "REDKEA";
+    private static final int MAX_DEFAULT_NETWORK_THREADS = 4;
+
+    private DiscoveryReceiver discoveryReceiver;
+    private PeripheralRegistry peripherals;
+    private Dispatcher dispatcher;
+    private Timers timers;
+    private Network network;
+    private Thread networkThread;
+    private final Metrics metrics = new Metrics();
+    private TimingWheel.Task metricsDump = null;
+    private SessionRecorder recorder = null;
+
+    /**
+     * @param deviceID         The ID this device answers discovery requests with.
+     * @param backend          Access to the GPIO and PWM peripherals of the board.
+     * @param callbackExecutor Runs the registered receive and send functions and the connection
+     *                         events, e.g. on the main thread of an Android app.
+     */
+    public Manager(String deviceID, PeripheralBackend backend, Executor callbackExecutor) throws IOException {
+        this(deviceID, backend, callbackExecutor, Math.min(MAX_DEFAULT_NETWORK_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param deviceID         The ID this device answers discovery requests with.
+     * @param backend          Access to the GPIO and PWM peripherals of the board.
+     * @param callbackExecutor Runs the registered receive and send functions and the connection
+     *                         events, e.g. on the main thread of an Android app.
+     * @param networkThreads   The number of threads reading and writing the app connections,
+     *                         besides the one accepting them.
+     */
+    public Manager(String deviceID, PeripheralBackend backend, Executor callbackExecutor, int networkThreads)
+            throws IOException {
+        // outputs and timers share one handle per pin and skip writes that change nothing
+        this.peripherals = new PeripheralRegistry(backend);
+        this.dispatcher = new Dispatcher(this, this.peripherals, callbackExecutor, this.metrics);
+        this.network = new Network(this, callbackExecutor, this.metrics, networkThreads);
+        // discovery requests are answered by the thread accepting connections
+        this.discoveryReceiver = new DiscoveryReceiver(deviceID, this.metrics);
+        this.network.addDiscovery(this.discoveryReceiver);
+        this.timers = new Timers(this.network, this.peripherals, callbackExecutor);
+    }
+
+    public void start() {
+        this.networkThread = new Thread(this.network, "redkeaNetwork");
+        this.networkThread.start();
+    }
+
+    /**
+     * Closes all connections and pins and stops the threads started by {@link #start()}.
+     */
+    public void stop() {
+        this.discoveryReceiver.close();
+        if (this.networkThread != null) {
+            this.networkThread.interrupt();
+        }
+        this.timers.shutdown();
+        this.dispatcher.shutdown();
+        stopRecording();
+    }
+
+    public void registerReceiver(String key, ReceiveFunction receiveFunction) {
+        registerReceiver(key, receiveFunction, DispatchMode.MAIN_THREAD);
+    }
+
+    /**
+     * Registers a receive function that runs where the given mode says. Calls for one key are
+     * always made in the order the frames arrived.
+     */
+    public void registerReceiver(String key, ReceiveFunction receiveFunction, DispatchMode mode) {
+        registerReceiver(key, receiveFunction, mode, InboundPolicy.deliverAll());
+    }
+
+    /**
+     * Registers a receive function that runs where the given mode says, with the policy deciding
+     * which frames it gets to see when it falls behind.
+     */
+    public void registerReceiver(String key, ReceiveFunction receiveFunction, DispatchMode mode, InboundPolicy policy) {
+        this.dispatcher.registerReceiver(key, receiveFunction, mode, policy);
+    }
+
+    /**
+     * @return The queue and run times of the receive function registered for the key, or null if
+     * there is none.
+     */
+    public ReceiverStats getReceiverStats(String key) {
+        return this.dispatcher.getReceiverStats(key);
+    }
+
+    /**
+     * @return A copy of the frame counters, queue depths, pool hit rates and latency histograms
+     * recorded since the manager was created.
+     */
+    public MetricsSnapshot getMetrics() {
+        return this.metrics.snapshot(this.peripherals, this.timers.getJitter());
+    }
+
+    /**
+     * Logs {@link #getMetrics()} at the given period, or stops doing so if the period is 0.
+     */
+    public synchronized void setMetricsDump(long period, TimeUnit unit) {
+        if (this.metricsDump != null) {
+            this.metricsDump.cancel();
+            this.metricsDump = null;
+        }
+        if (period > 0) {
+            this.metricsDump = this.timers.scheduleOnCallbackExecutor(new Runnable() {
+                @Override
+                public void run() {
+                    Log.i(TAG, "Metrics:\n" + getMetrics());
+                }
+            }, period, unit);
+        }
+    }
+
+    /**
+     * Traces every n-th received command from socket read to receive function or pin write, or
+     * stops tracing if n is 0. See {@link #dumpTrace(File)}.
+     */
+    public void setTracing(int sampleEvery) {
+        this.metrics.getTracer().setSampleEvery(sampleEvery);
+    }
+
+    /**
+     * Writes the latest traces to a binary file, which {@code TraceReport} of the loadgen module
+     * can print.
+     *
+     * @return The number of traces written.
+     */
+    public int dumpTrace(File file) throws IOException {
+        return this.metrics.getTracer().dump(file);
+    }
+
+    /**
+     * Records every frame sent and received into memory-mapped segment files in the directory,
+     * which {@code SessionReplay} of the loadgen module can play back. Replaces a running
+     * recording.
+     */
+    public synchronized void startRecording(File directory) throws IOException {
+        stopRecording();
+        this.recorder = new SessionRecorder(directory);
+        this.network.setRecorder(this.recorder);
+    }
+
+    /**
+     * Stops the recording started by {@link #startRecording(File)}, if any.
+     */
+    public synchronized void stopRecording() {
+        if (this.recorder != null) {
+            this.network.setRecorder(null);
+            this.recorder.close();
+            this.recorder = null;
+        }
+    }
+
+    public void unregisterReceiver(String key) {
+        this.dispatcher.unregisterReceiver(key);
+    }
+
+    public void registerSender(String key, SendFunction sendFunction) {
+        this.timers.registerSender(key, sendFunction);
+    }
+
+    public void unregisterSender(String key) {
+        this.timers.unregisterSender(key);
+    }
+
+    /**
+     * Sets how digital pin timers read their inputs. Applies to timers the app sets up after the
+     * call; the default is {@link DigitalInputPolicy#polling()}.
+     */
+    public void setDigitalInputPolicy(DigitalInputPolicy policy) {
+        this.timers.setInputPolicy(policy);
+    }
+
+    /**
+     * Sends polled digital pins with the same interval as one DATA_SEND_BATCH frame per tick
+     * instead of one DATA_SEND frame per pin. Only apps that announce batch support in WELCOME get
+     * batched frames, all others keep getting one DATA_SEND per pin. Applies to timers apps set up
+     * after the call; edge-triggered inputs are never batched.
+     */
+    public void setBatchedSampling(boolean batching) {
+        this.timers.setBatching(batching);
+    }
+
+    /**
+     * Sends apps that support it a heartbeat PING at the given interval, measuring the RTT of
+     * their connection, and closes their connection once it has been silent for the given
+     * multiple of heartbeat rounds, e.g. because the app vanished without closing the socket.
+     * An interval of 0 turns heartbeats off. The default is one second and four rounds.
+     */
+    public void setHeartbeat(long interval, TimeUnit unit, int silenceMultiple) {
+        this.network.setHeartbeat(interval, unit, silenceMultiple);
+    }
+
+    public void setConnectionEventListener(ConnectionEventListener listener) {
+        this.network.setConnectionEventListener(listener);
+    }
+
+    void setupTimers(Command command) throws IOException {
+        this.timers.setup(command);
+    }
+
+    void dispatch(Command command) throws IOException {
+        this.dispatcher.dispatch(command);
+    }
+
+    /**
+     * Drops the subscriptions of a closed connection. Output pins are only reset once the last
+     * connection is gone, so other clients keep their state.
+     */
+    void disconnect(Connection connection, boolean lastConnection) {
+        this.timers.unsubscribe(connection);
+        if (lastConnection) {
+            this.dispatcher.reset();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.redkea.androidthings;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * The counters, gauges and histograms the network and the dispatcher record into. Recording only
+ * touches atomics, so it never locks and never allocates; {@link #snapshot} copies everything into
+ * a {@link MetricsSnapshot} for reading.
+ */
+class Metrics {
+    private static final int TYPES = 256;
+
+    static final int DISCOVERY_ANSWERED = 0;
+    static final int DISCOVERY_RATE_LIMITED = 1;
+    static final int DISCOVERY_INVALID = 2;
+    static final int DISCOVERY_DROPPED = 3;
+
+    private final AtomicLongArray framesIn = new AtomicLongArray(TYPES);
+    private final AtomicLongArray bytesIn = new AtomicLongArray(TYPES);
+    private final AtomicLongArray framesOut = new AtomicLongArray(TYPES);
+    private final AtomicLongArray bytesOut = new AtomicLongArray(TYPES);
+    private final AtomicLong wireBytesIn = new AtomicLong();
+    private final AtomicLong wireBytesOut = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicLong outboundBytes = new AtomicLong();
+    private final AtomicLong outboundHighWater = new AtomicLong();
+    private final AtomicLong reapedConnections = new AtomicLong();
+    private final Histogram rtt = new Histogram();
+    private final AtomicLongArray discovery = new AtomicLongArray(DISCOVERY_DROPPED + 1);
+    private final Histogram dispatchQueueTime = new Histogram();
+    private final Histogram receiverRunTime = new Histogram();
+    private final Tracer tracer = new Tracer();
+
+    /**
+     * @return The tracer that samples received commands, see {@link Tracer}.
+     */
+    Tracer getTracer() {
+        return this.tracer;
+    }
+
+    void recordFrameIn(CommandType type, int bytes) {
+        int index = type.getCode() & 0xFF;
+        this.framesIn.incrementAndGet(index);
+        this.bytesIn.addAndGet(index, bytes);
+    }
+
+    /**
+     * Counts one encoded frame queued for one connection, before any compression.
+     */
+    void recordFrameOut(CommandType type, int bytes) {
+        int index = type.getCode() & 0xFF;
+        this.framesOut.incrementAndGet(index);
+        this.bytesOut.addAndGet(index, bytes);
+    }
+
+    void recordWireIn(long bytes) {
+        this.wireBytesIn.addAndGet(bytes);
+    }
+
+    void recordWireOut(long bytes) {
+        this.wireBytesOut.addAndGet(bytes);
+    }
+
+    void recordConnectionOpened() {
+        this.connections.incrementAndGet();
+        this.acceptedConnections.incrementAndGet();
+    }
+
+    void recordConnectionClosed() {
+        this.connections.decrementAndGet();
+    }
+
+    /**
+     * Counts a connection closed because it did not answer heartbeats.
+     */
+    void recordReaped() {
+        this.reapedConnections.incrementAndGet();
+    }
+
+    /**
+     * Records the round-trip time of a heartbeat PING.
+     */
+    void recordRtt(long nanos) {
+        this.rtt.record(nanos);
+    }
+
+    /**
+     * Adjusts the number of bytes waiting in outbound buffers for slow sockets.
+     */
+    void recordOutbound(long delta) {
+        long bytes = this.outboundBytes.addAndGet(delta);
+        long highWater;
+        while (bytes > (highWater = this.outboundHighWater.get())) {
+            if (this.outboundHighWater.compareAndSet(highWater, bytes)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Counts a discovery datagram by what became of it, one of the {@code DISCOVERY_} constants.
+     */
+    void recordDiscovery(int outcome) {
+        this.discovery.incrementAndGet(outcome);
+    }
+
+    void recordDispatch(long queueNanos, long runNanos) {
+        this.dispatchQueueTime.record(queueNanos);
+        this.receiverRunTime.record(runNanos);
+    }
+
+    MetricsSnapshot snapshot(PeripheralRegistry peripherals, Histogram timerJitter) {
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        for (CommandType type : CommandType.values()) {
+            int index = type.getCode() & 0xFF;
+            long in = this.framesIn.get(index);
+            long out = this.framesOut.get(index);
+            if (in != 0 || out != 0) {
+                snapshot.addType(type.name(), in, this.bytesIn.get(index), out, this.bytesOut.get(index));
+            }
+        }
+        snapshot.wireBytesIn = this.wireBytesIn.get();
+        snapshot.wireBytesOut = this.wireBytesOut.get();
+        snapshot.connections = this.connections.get();
+        snapshot.acceptedConnections = this.acceptedConnections.get();
+        snapshot.outboundBytes = this.outboundBytes.get();
+        snapshot.outboundHighWater = this.outboundHighWater.get();
+        snapshot.reapedConnections = this.reapedConnections.get();
+        snapshot.discoveryAnswered = this.discovery.get(DISCOVERY_ANSWERED);
+        snapshot.discoveryRateLimited = this.discovery.get(DISCOVERY_RATE_LIMITED);
+        snapshot.discoveryInvalid = this.discovery.get(DISCOVERY_INVALID);
+        snapshot.discoveryDropped = this.discovery.get(DISCOVERY_DROPPED);
+        snapshot.addPool(MetricsSnapshot.Pool.COMMAND, Command.getPool().getHitCount(), Command.getPool().getMissCount());
+        snapshot.addPool(MetricsSnapshot.Pool.FRAME, Frame.getPool().getHitCount(), Frame.getPool().getMissCount());
+        snapshot.addPool(MetricsSnapshot.Pool.BUFFER, BufferSlab.getHitCount(), BufferSlab.getMissCount());
+        snapshot.skippedPeripheralWrites = peripherals.getSkippedWrites();
+        snapshot.dispatchQueueTime = new LatencyStats(this.dispatchQueueTime);
+        snapshot.receiverRunTime = new LatencyStats(this.receiverRunTime);
+        snapshot.timerJitter = new LatencyStats(timerJitter);
+        snapshot.heartbeatRtt = new LatencyStats(this.rtt);
+        snapshot.peripheralCallTime = new LatencyStats(peripherals.getCallTime());
+        return snapshot;
+    }
+}
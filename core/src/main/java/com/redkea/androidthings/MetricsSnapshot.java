@@ -0,0 +1,275 @@
+package com.redkea.androidthings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * A point in time copy of what the library has been doing since it was created, see
+ * {@link Manager#getMetrics()}. Counters only grow; compare two snapshots to get rates. Latencies
+ * are in nanoseconds.
+ */
+public final class MetricsSnapshot {
+    /**
+     * The object pools whose hit rates are tracked.
+     */
+    public enum Pool {
+        COMMAND, FRAME, BUFFER
+    }
+
+    private final long createdAt = System.currentTimeMillis();
+    private final List<String> types = new ArrayList<>();
+    private final List<long[]> typeCounts = new ArrayList<>();
+    private final long[] poolHits = new long[Pool.values().length];
+    private final long[] poolMisses = new long[Pool.values().length];
+    long wireBytesIn;
+    long wireBytesOut;
+    int connections;
+    long acceptedConnections;
+    long outboundBytes;
+    long outboundHighWater;
+    long reapedConnections;
+    long skippedPeripheralWrites;
+    long discoveryAnswered;
+    long discoveryRateLimited;
+    long discoveryInvalid;
+    long discoveryDropped;
+    LatencyStats dispatchQueueTime;
+    LatencyStats receiverRunTime;
+    LatencyStats timerJitter;
+    LatencyStats heartbeatRtt;
+    LatencyStats peripheralCallTime;
+
+    MetricsSnapshot() {
+    }
+
+    void addType(String type, long framesIn, long bytesIn, long framesOut, long bytesOut) {
+        this.types.add(type);
+        this.typeCounts.add(new long[]{framesIn, bytesIn, framesOut, bytesOut});
+    }
+
+    void addPool(Pool pool, long hits, long misses) {
+        this.poolHits[pool.ordinal()] = hits;
+        this.poolMisses[pool.ordinal()] = misses;
+    }
+
+    /**
+     * @return The wall clock time the snapshot was taken at, in milliseconds.
+     */
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    /**
+     * @return The names of the command types that have been received or sent, e.g. "DATA_SEND".
+     */
+    public List<String> getCommandTypes() {
+        return Collections.unmodifiableList(this.types);
+    }
+
+    public long getFramesIn(String commandType) {
+        return count(commandType, 0);
+    }
+
+    public long getBytesIn(String commandType) {
+        return count(commandType, 1);
+    }
+
+    /**
+     * @return The number of frames of the type queued for connections, counting a broadcast once
+     * per connection.
+     */
+    public long getFramesOut(String commandType) {
+        return count(commandType, 2);
+    }
+
+    /**
+     * @return The encoded size of the frames of the type queued for connections, before
+     * compression.
+     */
+    public long getBytesOut(String commandType) {
+        return count(commandType, 3);
+    }
+
+    /**
+     * @return The number of bytes read from all sockets.
+     */
+    public long getWireBytesIn() {
+        return this.wireBytesIn;
+    }
+
+    /**
+     * @return The number of bytes written to all sockets.
+     */
+    public long getWireBytesOut() {
+        return this.wireBytesOut;
+    }
+
+    public int getConnectionCount() {
+        return this.connections;
+    }
+
+    public long getAcceptedConnectionCount() {
+        return this.acceptedConnections;
+    }
+
+    /**
+     * @return The number of connections closed because they stopped answering heartbeats.
+     */
+    public long getReapedConnectionCount() {
+        return this.reapedConnections;
+    }
+
+    /**
+     * @return The number of bytes waiting for slow sockets, summed over all connections.
+     */
+    public long getOutboundBytes() {
+        return this.outboundBytes;
+    }
+
+    /**
+     * @return The highest value {@link #getOutboundBytes()} has reached.
+     */
+    public long getOutboundHighWater() {
+        return this.outboundHighWater;
+    }
+
+    /**
+     * @return The number of discovery requests answered.
+     */
+    public long getDiscoveryAnswered() {
+        return this.discoveryAnswered;
+    }
+
+    /**
+     * @return The number of discovery requests ignored because their source asked too often.
+     */
+    public long getDiscoveryRateLimited() {
+        return this.discoveryRateLimited;
+    }
+
+    /**
+     * @return The number of datagrams on the discovery port that were no discovery request.
+     */
+    public long getDiscoveryInvalid() {
+        return this.discoveryInvalid;
+    }
+
+    /**
+     * @return The number of discovery replies dropped because the socket buffer was full.
+     */
+    public long getDiscoveryDropped() {
+        return this.discoveryDropped;
+    }
+
+    public long getPoolHits(Pool pool) {
+        return this.poolHits[pool.ordinal()];
+    }
+
+    public long getPoolMisses(Pool pool) {
+        return this.poolMisses[pool.ordinal()];
+    }
+
+    /**
+     * @return The share of acquires served from the pool, from 0 to 1.
+     */
+    public double getPoolHitRate(Pool pool) {
+        long total = getPoolHits(pool) + getPoolMisses(pool);
+        return (total == 0) ? 1.0 : (double) getPoolHits(pool) / total;
+    }
+
+    /**
+     * @return The number of peripheral writes skipped because they would not have changed the
+     * hardware state.
+     */
+    public long getSkippedPeripheralWrites() {
+        return this.skippedPeripheralWrites;
+    }
+
+    /**
+     * @return The time WRITE_TO_FUNCTION frames waited for their receive function, over all keys.
+     */
+    public LatencyStats getDispatchQueueTime() {
+        return this.dispatchQueueTime;
+    }
+
+    /**
+     * @return The time receive functions ran, over all keys.
+     */
+    public LatencyStats getReceiverRunTime() {
+        return this.receiverRunTime;
+    }
+
+    /**
+     * @return The delay between the deadlines of timer ticks and the moment they ran.
+     */
+    public LatencyStats getTimerJitter() {
+        return this.timerJitter;
+    }
+
+    /**
+     * @return The round-trip times of heartbeat PINGs, over all connections.
+     */
+    public LatencyStats getHeartbeatRtt() {
+        return this.heartbeatRtt;
+    }
+
+    /**
+     * @return The duration of the calls that reached the GPIO and PWM hardware.
+     */
+    public LatencyStats getPeripheralCallTime() {
+        return this.peripheralCallTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "connections=%d accepted=%d reaped=%d wireIn=%d wireOut=%d outbound=%d outboundHighWater=%d%n",
+                this.connections, this.acceptedConnections, this.reapedConnections, this.wireBytesIn,
+                this.wireBytesOut, this.outboundBytes, this.outboundHighWater));
+        for (int i = 0; i < this.types.size(); ++i) {
+            long[] counts = this.typeCounts.get(i);
+            builder.append(String.format(Locale.US, "%s in=%d/%dB out=%d/%dB%n",
+                    this.types.get(i), counts[0], counts[1], counts[2], counts[3]));
+        }
+        builder.append(String.format(Locale.US, "discovery answered=%d rateLimited=%d invalid=%d dropped=%d%n",
+                this.discoveryAnswered, this.discoveryRateLimited, this.discoveryInvalid, this.discoveryDropped));
+        for (Pool pool : Pool.values()) {
+            builder.append(String.format(Locale.US, "pool %s hits=%d misses=%d%n",
+                    pool, getPoolHits(pool), getPoolMisses(pool)));
+        }
+        builder.append("dispatch queue ").append(this.dispatchQueueTime).append('\n');
+        builder.append("receiver run ").append(this.receiverRunTime).append('\n');
+        builder.append("timer jitter ").append(this.timerJitter).append('\n');
+        builder.append("heartbeat rtt ").append(this.heartbeatRtt).append('\n');
+        builder.append("peripheral call ").append(this.peripheralCallTime)
+                .append(" skipped=").append(this.skippedPeripheralWrites);
+        return builder.toString();
+    }
+
+    private long count(String commandType, int column) {
+        int index = this.types.indexOf(commandType);
+        return (index < 0) ? 0 : this.typeCounts.get(index)[column];
+    }
+}
@@ -0,0 +1,340 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * The acceptor thread of the TCP server. It accepts connections, answers discovery requests and
+ * hands every connection to the {@link Reactor} with the fewest connections, which serves it from
+ * then on. Outgoing commands are routed to the reactors owning their targets.
+ */
+class Network implements Runnable {
+    private static String TAG = "REDKEA";
+
+    private static int connectionPort = 5050;
+    /** WELCOME capability: frames sent to the client are compressed, see {@link FrameDeflater}. */
+    static final int CAP_DEFLATE = 0x0001;
+    /** WELCOME capability: the client answers PINGs from the device with PONGs echoing them. */
+    static final int CAP_HEARTBEAT = 0x0002;
+    /**
+     * WELCOME capability: the client reads the numbers, booleans and gauges of DATA_SEND frames and
+     * DATA_SEND_SERIES frames, see {@link Sender}. Clients without it only get text.
+     */
+    static final int CAP_TYPED_DATA = 0x0004;
+    /**
+     * WELCOME capability: the client reads the BATCH_LAYOUT and DATA_SEND_BATCH frames of sampled
+     * pin groups, see {@link PinGroup}.
+     */
+    static final int CAP_BATCH = 0x0008;
+    /** The capability bits of the WELCOME handshake this side supports. */
+    static final int SUPPORTED_CAPABILITIES = CAP_DEFLATE | CAP_HEARTBEAT | CAP_TYPED_DATA | CAP_BATCH;
+    private final Reactor[] reactors;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger nextConnectionId = new AtomicInteger();
+    private volatile Thread thread;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Executor callbackExecutor;
+    private volatile ConnectionEventListener listener = null;
+    private volatile SessionRecorder recorder = null;
+    private volatile long heartbeatInterval = TimeUnit.SECONDS.toNanos(1);
+    private volatile int silenceMultiple = 4;
+    // where the search for the least loaded reactor starts, so ties are spread round-robin
+    private int nextReactor = 0;
+
+    /**
+     * @param reactorCount The number of I/O threads serving the connections.
+     */
+    Network(Manager manager, Executor callbackExecutor, Metrics metrics, int reactorCount) throws IOException {
+        this(manager, callbackExecutor, metrics, reactorCount, connectionPort);
+    }
+
+    /**
+     * @param port The port to accept connections on, 0 for any free one.
+     */
+    Network(Manager manager, Executor callbackExecutor, Metrics metrics, int reactorCount, int port)
+            throws IOException {
+        this.callbackExecutor = callbackExecutor;
+
+        this.reactors = new Reactor[Math.max(1, reactorCount)];
+        for (int i = 0; i < this.reactors.length; ++i) {
+            this.reactors[i] = new Reactor(this, manager, metrics);
+        }
+
+        this.selector = SelectorProvider.provider().openSelector();
+
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Answers discovery requests on the acceptor thread from now on.
+     */
+    void addDiscovery(DiscoveryReceiver discoveryReceiver) throws IOException {
+        discoveryReceiver.register(this.selector);
+    }
+
+    /**
+     * Records all frames with the given recorder from now on, or stops recording if it is null.
+     */
+    void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    SessionRecorder getRecorder() {
+        return this.recorder;
+    }
+
+    /**
+     * Sets how often heartbeat PINGs are sent, 0 to send none, and after how many heartbeat
+     * rounds of silence a connection is closed. A round is the interval plus the retransmission
+     * timeout derived from the connection's RTT.
+     */
+    void setHeartbeat(long interval, TimeUnit unit, int silenceMultiple) {
+        this.heartbeatInterval = unit.toNanos(interval);
+        this.silenceMultiple = Math.max(1, silenceMultiple);
+        for (Reactor reactor : this.reactors) {
+            reactor.wakeup();
+        }
+    }
+
+    long getHeartbeatInterval() {
+        return this.heartbeatInterval;
+    }
+
+    int getSilenceMultiple() {
+        return this.silenceMultiple;
+    }
+
+    void setConnectionEventListener(ConnectionEventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a command for its target connections, or for all connected clients if it has none.
+     * May be called from any thread. A command whose targets are spread over several reactors is
+     * copied, so every reactor encodes and recycles its own. Reactors that have ended are skipped.
+     */
+    void sendCommand(Command command) {
+        if (this.reactors.length == 1 && this.reactors[0].isRunning()) {
+            this.reactors[0].sendCommand(command);
+            return;
+        }
+        Reactor last = null;
+        for (Reactor reactor : this.reactors) {
+            if (reactor.isRunning() && reactor.getLoad() > 0 && serves(reactor, command)) {
+                if (last != null) {
+                    last.sendCommand(command.copy());
+                }
+                last = reactor;
+            }
+        }
+        if (last != null) {
+            last.sendCommand(command);
+        } else {
+            command.recycle();
+        }
+    }
+
+    private static boolean serves(Reactor reactor, Command command) {
+        if (command.targets == null) {
+            return true;
+        }
+        for (Connection connection : command.targets) {
+            if (connection.reactor == reactor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int nextConnectionId() {
+        return this.nextConnectionId.getAndIncrement();
+    }
+
+    /**
+     * Counts a connection a reactor closed or dropped.
+     *
+     * @return The number of connections that are still open.
+     */
+    int connectionClosed() {
+        return this.openConnections.decrementAndGet();
+    }
+
+    /**
+     * Called by a reactor whose thread ended on an error. New connections go to the remaining
+     * reactors; once none is left the network stops.
+     */
+    void reactorFailed() {
+        for (Reactor reactor : this.reactors) {
+            if (reactor.isRunning()) {
+                return;
+            }
+        }
+        Thread thread = this.thread;
+        if (thread != null) {
+            Log.w(TAG, "All reactor threads failed, stopping the network");
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+        Thread[] threads = new Thread[this.reactors.length];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(this.reactors[i], "redkeaReactor-" + i);
+            threads[i].start();
+        }
+        try {
+            while (!Thread.interrupted()) {
+                this.selector.select();
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept(key);
+                    } else if (key.attachment() instanceof DiscoveryReceiver) {
+                        receiveDiscovery((DiscoveryReceiver) key.attachment());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Network thread failed", e);
+        } finally {
+            shutdown(threads);
+        }
+    }
+
+    private void shutdown(Thread[] threads) {
+        try {
+            this.serverChannel.close();
+            this.selector.close();
+        } catch (IOException e) {
+            // ignore
+            Log.d(TAG, "Error closing selector: " + e.toString());
+        }
+        // every reactor closes its own connections
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void accept(SelectionKey key) throws IOException {
+        // For an accept to be pending the channel must be a server socket channel.
+        ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
+
+        // Accept the connection and make it non-blocking
+        SocketChannel socketChannel = serverSocketChannel.accept();
+        if (socketChannel == null) {
+            return;
+        }
+        socketChannel.configureBlocking(false);
+        // frames are small and timed, don't let Nagle hold them back until the previous one is acked
+        socketChannel.socket().setTcpNoDelay(true);
+
+        Reactor reactor = leastLoadedReactor();
+        if (reactor == null) {
+            socketChannel.close();
+            return;
+        }
+        this.openConnections.incrementAndGet();
+        reactor.adopt(socketChannel);
+    }
+
+    /**
+     * @return The running reactor with the fewest connections, or null if none is running.
+     */
+    private Reactor leastLoadedReactor() {
+        Reactor best = null;
+        for (int i = 0; i < this.reactors.length; ++i) {
+            Reactor reactor = this.reactors[(this.nextReactor + i) % this.reactors.length];
+            if (!reactor.isRunning()) {
+                continue;
+            }
+            if (best == null || reactor.getLoad() < best.getLoad()) {
+                best = reactor;
+            }
+        }
+        this.nextReactor = (this.nextReactor + 1) % this.reactors.length;
+        return best;
+    }
+
+    private void receiveDiscovery(DiscoveryReceiver discoveryReceiver) {
+        try {
+            discoveryReceiver.receive();
+        } catch (IOException e) {
+            // a bad datagram must not take the connections down
+            Log.w(TAG, "Discovery failed", e);
+        }
+    }
+
+    void callOnConnect() {
+        final ConnectionEventListener listener = this.listener;
+        if (listener != null) {
+            this.callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onConnect();
+                }
+            });
+        }
+    }
+
+    void callOnDisconnect() {
+        final ConnectionEventListener listener = this.listener;
+        if (listener != null) {
+            this.callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDisconnect();
+                }
+            });
+        }
+    }
+}
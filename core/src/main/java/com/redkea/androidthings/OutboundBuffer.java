@@ -0,0 +1,138 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Queue of encoded frames waiting to be written to one connection.
+ * <p>
+ * The queue holds references to shared {@link Frame}s instead of copies, so a frame sent to many
+ * connections is encoded and stored once. A non-blocking socket accepts only as much as fits into
+ * its send buffer; the offset into the first frame remembers where the last write stopped, so
+ * frames are never truncated. Each frame is released once it has been written completely. Only
+ * used from the network thread.
+ */
+class OutboundBuffer {
+    private static final int INITIAL_FRAMES = 16;
+    private static final int MAX_GATHER = 16;
+    private static final int MAX_BYTES = 1 << 20;
+
+    private Frame[] frames = new Frame[INITIAL_FRAMES];
+    private int head = 0;
+    private int count = 0;
+    private int headOffset = 0;
+    private int size = 0;
+    private final ByteBuffer[] views = new ByteBuffer[MAX_GATHER];
+
+    boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * @return The number of bytes still to be written.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Queues the frame and takes a reference to it.
+     *
+     * @throws IOException If the peer does not keep up and the queue would exceed its maximum size.
+     */
+    void append(Frame frame) throws IOException {
+        if (this.size + frame.length() > MAX_BYTES) {
+            throw new IOException("Outbound buffer overflow, peer is not reading");
+        }
+        if (this.count == this.frames.length) {
+            Frame[] grown = new Frame[this.frames.length * 2];
+            for (int i = 0; i < this.count; ++i) {
+                grown[i] = this.frames[(this.head + i) % this.frames.length];
+            }
+            this.frames = grown;
+            this.head = 0;
+        }
+        frame.retain();
+        this.frames[(this.head + this.count) % this.frames.length] = frame;
+        this.count++;
+        this.size += frame.length();
+    }
+
+    /**
+     * Writes as many pending bytes as the channel accepts.
+     *
+     * @return The number of bytes written.
+     */
+    long writeTo(GatheringByteChannel channel) throws IOException {
+        long total = 0;
+        while (this.count > 0) {
+            int gathered = Math.min(this.count, MAX_GATHER);
+            int offset = this.headOffset;
+            for (int i = 0; i < gathered; ++i) {
+                this.views[i] = this.frames[(this.head + i) % this.frames.length].view(offset);
+                offset = 0;
+            }
+            long written = channel.write(this.views, 0, gathered);
+            total += written;
+            consume(written);
+            if (this.count > 0 && this.views[gathered - 1].hasRemaining()) {
+                // the socket buffer is full
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Drops all pending frames.
+     */
+    void release() {
+        while (this.count > 0) {
+            this.frames[this.head].release();
+            this.frames[this.head] = null;
+            this.head = (this.head + 1) % this.frames.length;
+            this.count--;
+        }
+        this.head = 0;
+        this.headOffset = 0;
+        this.size = 0;
+    }
+
+    private void consume(long written) {
+        this.size -= written;
+        long left = written + this.headOffset;
+        while (this.count > 0) {
+            Frame frame = this.frames[this.head];
+            if (left < frame.length()) {
+                break;
+            }
+            left -= frame.length();
+            frame.release();
+            this.frames[this.head] = null;
+            this.head = (this.head + 1) % this.frames.length;
+            this.count--;
+        }
+        this.headOffset = (int) left;
+    }
+}
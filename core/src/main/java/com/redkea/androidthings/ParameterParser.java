@@ -1,7 +1,5 @@
 package com.redkea.androidthings;
 
-import java.util.List;
-
 /*
         redkea library for Android Things
         Copyright 2017 redkea
@@ -23,21 +21,23 @@ import java.util.List;
 */
 
 public class ParameterParser {
-    private List<Object> params;
+    private Command command;
+    private int offset;
 
-    public ParameterParser(List<Object> params) {
-        this.params = params;
+    ParameterParser(Command command, int offset) {
+        this.command = command;
+        this.offset = offset;
     }
 
     public int readFromSlider() {
-        return (short) this.params.get(0);
+        return this.command.getInt16(this.offset);
     }
 
     public boolean readFromToggle() {
-        return (boolean) this.params.get(0);
+        return this.command.getBool(this.offset);
     }
 
     public boolean readFromTouch() {
-        return (boolean) this.params.get(0);
+        return this.command.getBool(this.offset);
     }
 }
@@ -0,0 +1,83 @@
+package com.redkea.androidthings;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Access to the GPIO and PWM peripherals of a board.
+ * <p>
+ * The library core only talks to hardware through this interface, so it runs unchanged on
+ * Android Things, on a plain JVM against the {@link SimulatedBackend}, or on anything else that
+ * provides an implementation.
+ */
+public interface PeripheralBackend {
+
+    /**
+     * Opens the GPIO with the given name. The pin stays open until it is closed.
+     */
+    GpioPin openGpio(String name) throws IOException;
+
+    /**
+     * Opens the PWM output with the given name. The output stays open until it is closed.
+     */
+    PwmPin openPwm(String name) throws IOException;
+
+    interface GpioPin extends Closeable {
+        int DIRECTION_IN = 0;
+        int DIRECTION_OUT_INITIALLY_HIGH = 1;
+        int DIRECTION_OUT_INITIALLY_LOW = 2;
+
+        void setDirection(int direction) throws IOException;
+
+        void setValue(boolean value) throws IOException;
+
+        boolean getValue() throws IOException;
+
+        /**
+         * Reports both edges of an input to the listener, on a thread of the backend. Passing null
+         * stops the reports.
+         */
+        void setEdgeListener(EdgeListener listener) throws IOException;
+    }
+
+    interface EdgeListener {
+
+        /**
+         * @param value          The level of the pin after the edge.
+         * @param timestampNanos {@link System#nanoTime()} when the edge was seen.
+         */
+        void onEdge(GpioPin pin, boolean value, long timestampNanos);
+    }
+
+    interface PwmPin extends Closeable {
+
+        void setFrequencyHz(double frequencyHz) throws IOException;
+
+        /**
+         * @param dutyCycle The duty cycle in percent, from 0 to 100.
+         */
+        void setDutyCycle(double dutyCycle) throws IOException;
+
+        void setEnabled(boolean enabled) throws IOException;
+    }
+}
@@ -0,0 +1,310 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Owns all GPIO and PWM handles opened through the library.
+ * <p>
+ * Every open returns a handle of its own, but all handles for one name share a single hardware
+ * handle, which is opened on first use and closed when the last handle is closed. The shared
+ * handle remembers the last direction, level, frequency, duty cycle and enable state written to it
+ * and skips writes that would not change anything, since every access to the hardware costs time
+ * on a real board and slider streams mostly repeat values. Levels of inputs are always read from
+ * the hardware.
+ * <p>
+ * Handles that share a pin have to agree on it: once one handle made a GPIO an input, another
+ * cannot make it an output and the other way round, and only one handle at a time can listen for
+ * edges. Such calls fail with an {@link IOException} instead of changing the pin under the handle
+ * that configured it.
+ */
+class PeripheralRegistry implements PeripheralBackend {
+    private final PeripheralBackend backend;
+    private final Map<String, SharedGpio> gpios = new HashMap<>();
+    private final Map<String, SharedPwm> pwms = new HashMap<>();
+    private final AtomicLong skippedWrites = new AtomicLong();
+    private final Histogram callTime = new Histogram();
+
+    PeripheralRegistry(PeripheralBackend backend) {
+        this.backend = backend;
+    }
+
+    @Override
+    public synchronized GpioPin openGpio(String name) throws IOException {
+        SharedGpio gpio = this.gpios.get(name);
+        if (gpio == null) {
+            gpio = new SharedGpio(name, this.backend.openGpio(name));
+            this.gpios.put(name, gpio);
+        }
+        gpio.references++;
+        return new GpioHandle(gpio);
+    }
+
+    @Override
+    public synchronized PwmPin openPwm(String name) throws IOException {
+        SharedPwm pwm = this.pwms.get(name);
+        if (pwm == null) {
+            pwm = new SharedPwm(name, this.backend.openPwm(name));
+            this.pwms.put(name, pwm);
+        }
+        pwm.references++;
+        return new PwmHandle(pwm);
+    }
+
+    /**
+     * @return The number of writes skipped because they would not have changed the hardware state.
+     */
+    long getSkippedWrites() {
+        return this.skippedWrites.get();
+    }
+
+    /**
+     * @return The duration of the calls that reached the backend, in nanoseconds.
+     */
+    Histogram getCallTime() {
+        return this.callTime;
+    }
+
+    private synchronized void release(SharedGpio gpio) throws IOException {
+        if (--gpio.references == 0) {
+            this.gpios.remove(gpio.name);
+            gpio.pin.close();
+        }
+    }
+
+    private synchronized void release(SharedPwm pwm) throws IOException {
+        if (--pwm.references == 0) {
+            this.pwms.remove(pwm.name);
+            pwm.pin.close();
+        }
+    }
+
+    private static final class SharedGpio {
+        final String name;
+        final GpioPin pin;
+        int references = 0;
+        // the last direction written, -1 before the first write
+        int direction = -1;
+        // the level of an output, inputs are never cached
+        boolean valueKnown = false;
+        boolean value;
+        // the handle that set the direction and the one that listens for edges, if still open
+        GpioHandle directionOwner;
+        GpioHandle listenerOwner;
+
+        SharedGpio(String name, GpioPin pin) {
+            this.name = name;
+            this.pin = pin;
+        }
+    }
+
+    private static final class SharedPwm {
+        final String name;
+        final PwmPin pin;
+        int references = 0;
+        double frequencyHz = Double.NaN;
+        double dutyCycle = Double.NaN;
+        Boolean enabled = null;
+
+        SharedPwm(String name, PwmPin pin) {
+            this.name = name;
+            this.pin = pin;
+        }
+    }
+
+    private class GpioHandle implements GpioPin {
+        private final SharedGpio gpio;
+        private boolean closed = false;
+
+        GpioHandle(SharedGpio gpio) {
+            this.gpio = gpio;
+        }
+
+        @Override
+        public void setDirection(int direction) throws IOException {
+            synchronized (this.gpio) {
+                checkOpen();
+                if (this.gpio.direction == direction) {
+                    skippedWrites.incrementAndGet();
+                    return;
+                }
+                if (this.gpio.directionOwner != null && this.gpio.directionOwner != this
+                        && (this.gpio.direction == DIRECTION_IN) != (direction == DIRECTION_IN)) {
+                    throw new IOException("GPIO " + this.gpio.name + " is already an "
+                            + ((this.gpio.direction == DIRECTION_IN) ? "input" : "output") + " of another handle");
+                }
+                long start = System.nanoTime();
+                this.gpio.pin.setDirection(direction);
+                callTime.record(System.nanoTime() - start);
+                this.gpio.directionOwner = this;
+                this.gpio.direction = direction;
+                this.gpio.valueKnown = (direction != DIRECTION_IN);
+                this.gpio.value = (direction == DIRECTION_OUT_INITIALLY_HIGH);
+            }
+        }
+
+        @Override
+        public void setValue(boolean value) throws IOException {
+            synchronized (this.gpio) {
+                checkOpen();
+                if (this.gpio.valueKnown && this.gpio.value == value) {
+                    skippedWrites.incrementAndGet();
+                    return;
+                }
+                long start = System.nanoTime();
+                this.gpio.pin.setValue(value);
+                callTime.record(System.nanoTime() - start);
+                this.gpio.valueKnown = (this.gpio.direction != DIRECTION_IN);
+                this.gpio.value = value;
+            }
+        }
+
+        @Override
+        public boolean getValue() throws IOException {
+            synchronized (this.gpio) {
+                checkOpen();
+                if (this.gpio.valueKnown) {
+                    // an output reads back what was written last
+                    return this.gpio.value;
+                }
+                long start = System.nanoTime();
+                boolean value = this.gpio.pin.getValue();
+                callTime.record(System.nanoTime() - start);
+                return value;
+            }
+        }
+
+        @Override
+        public void setEdgeListener(EdgeListener listener) throws IOException {
+            synchronized (this.gpio) {
+                checkOpen();
+                if (this.gpio.listenerOwner != null && this.gpio.listenerOwner != this) {
+                    if (listener == null) {
+                        // this handle has no listener to remove
+                        return;
+                    }
+                    throw new IOException("GPIO " + this.gpio.name + " already reports edges to another handle");
+                }
+                this.gpio.pin.setEdgeListener(listener);
+                this.gpio.listenerOwner = (listener != null) ? this : null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this.gpio) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                if (this.gpio.directionOwner == this) {
+                    this.gpio.directionOwner = null;
+                }
+                if (this.gpio.listenerOwner == this) {
+                    this.gpio.listenerOwner = null;
+                    this.gpio.pin.setEdgeListener(null);
+                }
+            }
+            release(this.gpio);
+        }
+
+        private void checkOpen() throws IOException {
+            if (this.closed) {
+                throw new IOException("GPIO " + this.gpio.name + " is closed");
+            }
+        }
+    }
+
+    private class PwmHandle implements PwmPin {
+        private final SharedPwm pwm;
+        private boolean closed = false;
+
+        PwmHandle(SharedPwm pwm) {
+            this.pwm = pwm;
+        }
+
+        @Override
+        public void setFrequencyHz(double frequencyHz) throws IOException {
+            synchronized (this.pwm) {
+                checkOpen();
+                if (this.pwm.frequencyHz == frequencyHz) {
+                    skippedWrites.incrementAndGet();
+                    return;
+                }
+                long start = System.nanoTime();
+                this.pwm.pin.setFrequencyHz(frequencyHz);
+                callTime.record(System.nanoTime() - start);
+                this.pwm.frequencyHz = frequencyHz;
+            }
+        }
+
+        @Override
+        public void setDutyCycle(double dutyCycle) throws IOException {
+            synchronized (this.pwm) {
+                checkOpen();
+                if (this.pwm.dutyCycle == dutyCycle) {
+                    skippedWrites.incrementAndGet();
+                    return;
+                }
+                long start = System.nanoTime();
+                this.pwm.pin.setDutyCycle(dutyCycle);
+                callTime.record(System.nanoTime() - start);
+                this.pwm.dutyCycle = dutyCycle;
+            }
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            synchronized (this.pwm) {
+                checkOpen();
+                if (this.pwm.enabled != null && this.pwm.enabled == enabled) {
+                    skippedWrites.incrementAndGet();
+                    return;
+                }
+                long start = System.nanoTime();
+                this.pwm.pin.setEnabled(enabled);
+                callTime.record(System.nanoTime() - start);
+                this.pwm.enabled = enabled;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this.pwm) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+            }
+            release(this.pwm);
+        }
+
+        private void checkOpen() throws IOException {
+            if (this.closed) {
+                throw new IOException("PWM " + this.pwm.name + " is closed");
+            }
+        }
+    }
+}
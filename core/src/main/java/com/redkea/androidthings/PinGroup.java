@@ -0,0 +1,162 @@
+package com.redkea.androidthings;
+
+import com.redkea.androidthings.PeripheralBackend.GpioPin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Digital pin timers with the same interval, sampled in one pass and sent as one frame.
+ * <p>
+ * Whenever the group changes, its subscribers get a BATCH_LAYOUT frame
+ * {@code [INT16 layout id][INT16 interval][STRING widget ID]...} listing the widgets in order.
+ * Every tick then sends one DATA_SEND_BATCH frame {@code [INT16 layout id][BYTES bitmap]} in which
+ * bit {@code i} (least significant bit first) is the level of the {@code i}-th widget. Each change
+ * gets a new layout id, so batches of an old layout can be told apart. The frame goes to every
+ * connection subscribed to any timer of the group; apps skip widgets they do not know. Only
+ * connections that announced {@link Network#CAP_BATCH} in WELCOME subscribe to grouped timers.
+ */
+class PinGroup implements Runnable {
+    private static String TAG = "REDKEA";
+    private static final AtomicInteger nextLayoutId = new AtomicInteger();
+
+    private final Network network;
+    private final short interval;
+    // guarded by the Timers lock
+    private final List<Timers.Timer> timers = new ArrayList<>();
+    private volatile Layout layout = null;
+    private TimingWheel.Task task;
+    private byte[] bitmap = new byte[0];
+
+    PinGroup(Network network, short interval) {
+        this.network = network;
+        this.interval = interval;
+    }
+
+    void start(TimingWheel wheel) {
+        this.task = wheel.scheduleAtFixedRate(this, 0, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        this.task.cancel();
+    }
+
+    void add(Timers.Timer timer) {
+        this.timers.add(timer);
+    }
+
+    void remove(Timers.Timer timer) {
+        this.timers.remove(timer);
+    }
+
+    boolean isEmpty() {
+        return this.timers.isEmpty();
+    }
+
+    /**
+     * Sends a new layout if the timers or their subscribers changed since the last one.
+     */
+    void update() {
+        String[] widgetIDs = new String[this.timers.size()];
+        GpioPin[] pins = new GpioPin[widgetIDs.length];
+        Set<Connection> targets = new HashSet<>();
+        for (int i = 0; i < widgetIDs.length; ++i) {
+            Timers.Timer timer = this.timers.get(i);
+            widgetIDs[i] = timer.widgetID;
+            pins[i] = timer.gpio;
+            targets.addAll(timer.subscribers);
+        }
+        Layout current = this.layout;
+        if (current != null && Arrays.equals(current.widgetIDs, widgetIDs) && current.targets.equals(targets)) {
+            return;
+        }
+
+        Layout layout = new Layout((short) nextLayoutId.incrementAndGet(), widgetIDs, pins,
+                Collections.unmodifiableSet(targets));
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.BATCH_LAYOUT);
+        command.addInt16(layout.id);
+        command.addInt16(this.interval);
+        for (String widgetID : widgetIDs) {
+            command.addString(widgetID);
+        }
+        command.targets = layout.targets;
+        this.network.sendCommand(command);
+        // published after the layout is queued, so no batch can overtake it
+        this.layout = layout;
+    }
+
+    /**
+     * Samples all pins of the group, runs on the timer thread.
+     */
+    @Override
+    public void run() {
+        Layout layout = this.layout;
+        if (layout == null || layout.targets.isEmpty()) {
+            return;
+        }
+        int length = (layout.pins.length + 7) / 8;
+        if (this.bitmap.length != length) {
+            this.bitmap = new byte[length];
+        } else {
+            Arrays.fill(this.bitmap, (byte) 0);
+        }
+        for (int i = 0; i < layout.pins.length; ++i) {
+            try {
+                if (layout.pins[i].getValue()) {
+                    this.bitmap[i >> 3] |= (byte) (1 << (i & 7));
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Error reading gpio: " + e.toString());
+            }
+        }
+
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND_BATCH);
+        command.addInt16(layout.id);
+        command.addBytes(this.bitmap, 0, length);
+        command.targets = layout.targets;
+        this.network.sendCommand(command);
+    }
+
+    private static final class Layout {
+        final short id;
+        final String[] widgetIDs;
+        final GpioPin[] pins;
+        final Set<Connection> targets;
+
+        Layout(short id, String[] widgetIDs, GpioPin[] pins, Set<Connection> targets) {
+            this.id = id;
+            this.widgetIDs = widgetIDs;
+            this.pins = pins;
+            this.targets = targets;
+        }
+    }
+}
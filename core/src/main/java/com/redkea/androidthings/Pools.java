@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redkea.androidthings;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Helper class for crating pools of objects. An example use looks like this:
+ * <pre>
+ * public class MyPooledClass {
+ *
+ *     private static final SynchronizedPool<MyPooledClass> sPool =
+ *             new SynchronizedPool<MyPooledClass>(10);
+ *
+ *     public static MyPooledClass obtain() {
+ *         MyPooledClass instance = sPool.acquire();
+ *         return (instance != null) ? instance : new MyPooledClass();
+ *     }
+ *
+ *     public void recycle() {
+ *          // Clear state if needed.
+ *          sPool.release(this);
+ *     }
+ *
+ *     . . .
+ * }
+ * </pre>
+ */
+public final class Pools {
+
+    private Pools() {
+        /* do nothing - hiding constructor */
+    }
+
+    /**
+     * Interface for managing a pool of objects.
+     *
+     * @param <T> The pooled type.
+     */
+    public interface Pool<T> {
+
+        /**
+         * @return An instance from the pool if such, null otherwise.
+         */
+        T acquire();
+
+        /**
+         * Release an instance to the pool.
+         *
+         * @param instance The instance to release.
+         * @return Whether the instance was put in the pool.
+         * @throws IllegalStateException If the instance is already in the pool.
+         */
+        boolean release(T instance);
+    }
+
+    /**
+     * Simple (non-synchronized) pool of objects.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class SimplePool<T> implements Pool<T> {
+        private final Object[] mPool;
+
+        private int mPoolSize;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public SimplePool(int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new Object[maxPoolSize];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T acquire() {
+            if (mPoolSize > 0) {
+                final int lastPooledIndex = mPoolSize - 1;
+                T instance = (T) mPool[lastPooledIndex];
+                mPool[lastPooledIndex] = null;
+                mPoolSize--;
+                return instance;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            if (isInPool(instance)) {
+                throw new IllegalStateException("Already in the pool!");
+            }
+            if (mPoolSize < mPool.length) {
+                mPool[mPoolSize] = instance;
+                mPoolSize++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isInPool(T instance) {
+            for (int i = 0; i < mPoolSize; i++) {
+                if (mPool[i] == instance) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Synchronized) pool of objects.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class SynchronizedPool<T> extends SimplePool<T> {
+        private final Object mLock = new Object();
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public SynchronizedPool(int maxPoolSize) {
+            super(maxPoolSize);
+        }
+
+        @Override
+        public T acquire() {
+            synchronized (mLock) {
+                return super.acquire();
+            }
+        }
+
+        @Override
+        public boolean release(T element) {
+            synchronized (mLock) {
+                return super.release(element);
+            }
+        }
+    }
+
+    /**
+     * Pool of objects that can be used from many threads without contention.
+     * <p>
+     * Each thread first uses a small private cache. Only when that cache runs empty or full, half
+     * of it is exchanged with a shared overflow area of slots that are claimed with compare-and-set,
+     * so the pool never locks and never allocates. Instances released by one thread and acquired
+     * by another, like commands created on the main thread and recycled on the network thread,
+     * travel through the shared slots. When a thread has ended, the instances in its cache are
+     * moved to the shared slots and the cache is dropped, so threads coming and going neither leak
+     * caches nor strand pooled instances.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ConcurrentPool<T> implements Pool<T> {
+        private final int mLocalSize;
+        private final AtomicReferenceArray<Object> mShared;
+        private final AtomicInteger mSharedCount = new AtomicInteger();
+        private final List<LocalCache> mCaches = new ArrayList<>();
+        private final Set<Object> mPooled;
+        private final ThreadLocal<LocalCache> mLocal = new ThreadLocal<LocalCache>() {
+            @Override
+            protected LocalCache initialValue() {
+                LocalCache cache = new LocalCache(mLocalSize);
+                synchronized (mCaches) {
+                    retireDeadCaches();
+                    mCaches.add(cache);
+                }
+                return cache;
+            }
+        };
+        // the counters of retired caches, guarded by mCaches
+        private long mRetiredHits;
+        private long mRetiredMisses;
+        private long mRetiredOverflows;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param localSize  The max number of instances cached per thread.
+         * @param sharedSize The max number of instances in the shared overflow area.
+         * @throws IllegalArgumentException If one of the sizes is less than one.
+         */
+        public ConcurrentPool(int localSize, int sharedSize) {
+            this(localSize, sharedSize, false);
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param localSize  The max number of instances cached per thread.
+         * @param sharedSize The max number of instances in the shared overflow area.
+         * @param debug      Whether to detect instances released twice. This costs a lock per
+         *                   call, so it should only be enabled while debugging.
+         * @throws IllegalArgumentException If one of the sizes is less than one.
+         */
+        public ConcurrentPool(int localSize, int sharedSize, boolean debug) {
+            if (localSize <= 0 || sharedSize <= 0) {
+                throw new IllegalArgumentException("The pool sizes must be > 0");
+            }
+            mLocalSize = localSize;
+            mShared = new AtomicReferenceArray<>(sharedSize);
+            mPooled = debug ? Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()) : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T acquire() {
+            LocalCache cache = mLocal.get();
+            if (cache.size == 0) {
+                cache.overflowFromShared(this);
+            }
+            if (cache.size == 0) {
+                cache.misses++;
+                return null;
+            }
+            T instance = (T) cache.items[--cache.size];
+            cache.items[cache.size] = null;
+            cache.hits++;
+            if (mPooled != null) {
+                synchronized (mPooled) {
+                    mPooled.remove(instance);
+                }
+            }
+            return instance;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            if (mPooled != null) {
+                synchronized (mPooled) {
+                    if (!mPooled.add(instance)) {
+                        throw new IllegalStateException("Already in the pool!");
+                    }
+                }
+            }
+            LocalCache cache = mLocal.get();
+            if (cache.size == cache.items.length) {
+                cache.overflowToShared(this);
+            }
+            if (cache.size == cache.items.length) {
+                cache.overflows++;
+                if (mPooled != null) {
+                    synchronized (mPooled) {
+                        mPooled.remove(instance);
+                    }
+                }
+                return false;
+            }
+            cache.items[cache.size++] = instance;
+            return true;
+        }
+
+        /**
+         * @return The number of acquires served from the pool, summed over all threads.
+         */
+        public long getHitCount() {
+            synchronized (mCaches) {
+                retireDeadCaches();
+                long count = mRetiredHits;
+                for (LocalCache cache : mCaches) {
+                    count += cache.hits;
+                }
+                return count;
+            }
+        }
+
+        /**
+         * @return The number of acquires that found the pool empty, summed over all threads.
+         */
+        public long getMissCount() {
+            synchronized (mCaches) {
+                retireDeadCaches();
+                long count = mRetiredMisses;
+                for (LocalCache cache : mCaches) {
+                    count += cache.misses;
+                }
+                return count;
+            }
+        }
+
+        /**
+         * @return The number of releases dropped because the pool was full, summed over all
+         * threads.
+         */
+        public long getOverflowCount() {
+            synchronized (mCaches) {
+                retireDeadCaches();
+                long count = mRetiredOverflows;
+                for (LocalCache cache : mCaches) {
+                    count += cache.overflows;
+                }
+                return count;
+            }
+        }
+
+        /**
+         * Moves the instances cached by threads that have ended to the shared slots and drops
+         * their caches. Instances that do not fit are left to the garbage collector. Must be
+         * called with the lock of mCaches held.
+         */
+        private void retireDeadCaches() {
+            for (Iterator<LocalCache> iterator = mCaches.iterator(); iterator.hasNext(); ) {
+                LocalCache cache = iterator.next();
+                if (cache.isOwnerAlive()) {
+                    continue;
+                }
+                iterator.remove();
+                mRetiredHits += cache.hits;
+                mRetiredMisses += cache.misses;
+                mRetiredOverflows += cache.overflows;
+                while (cache.size > 0) {
+                    Object instance = cache.items[--cache.size];
+                    cache.items[cache.size] = null;
+                    if (!putShared(cache.probe, instance) && mPooled != null) {
+                        synchronized (mPooled) {
+                            mPooled.remove(instance);
+                        }
+                    }
+                }
+            }
+        }
+
+        private Object takeShared(int start) {
+            int length = mShared.length();
+            for (int i = 0; i < length && mSharedCount.get() > 0; i++) {
+                int index = (start % length + i) % length;
+                Object instance = mShared.get(index);
+                if (instance != null && mShared.compareAndSet(index, instance, null)) {
+                    mSharedCount.decrementAndGet();
+                    return instance;
+                }
+            }
+            return null;
+        }
+
+        private boolean putShared(int start, Object instance) {
+            int length = mShared.length();
+            for (int i = 0; i < length && mSharedCount.get() < length; i++) {
+                int index = (start % length + i) % length;
+                if (mShared.get(index) == null && mShared.compareAndSet(index, null, instance)) {
+                    mSharedCount.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Per-thread cache. The counters are only written by the owning thread, the items are
+         * only touched by another thread once the owner has ended.
+         */
+        private static final class LocalCache {
+            private final Object[] items;
+            private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+            private final int probe = (int) (Thread.currentThread().getId() & 0x7FFFFFFF);
+            private int size;
+            private volatile long hits;
+            private volatile long misses;
+            private volatile long overflows;
+
+            private LocalCache(int size) {
+                this.items = new Object[size];
+            }
+
+            private boolean isOwnerAlive() {
+                Thread thread = this.owner.get();
+                return thread != null && thread.isAlive();
+            }
+
+            private void overflowFromShared(ConcurrentPool<?> pool) {
+                int wanted = Math.max(1, this.items.length / 2);
+                while (this.size < wanted) {
+                    Object instance = pool.takeShared(this.probe);
+                    if (instance == null) {
+                        break;
+                    }
+                    this.items[this.size++] = instance;
+                }
+            }
+
+            private void overflowToShared(ConcurrentPool<?> pool) {
+                int keep = this.items.length / 2;
+                while (this.size > keep) {
+                    if (!pool.putShared(this.probe, this.items[this.size - 1])) {
+                        break;
+                    }
+                    this.items[--this.size] = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * One of the I/O threads of the {@link Network}. A reactor owns the connections the acceptor
+ * hands to it: it reads and decodes their frames, answers PINGs and WELCOMEs, sends heartbeats
+ * and writes the commands queued for them. Connections, frames and buffers never leave the
+ * reactor, so reactors only share the command pools and the metrics.
+ */
+class Reactor implements Runnable {
+    private static String TAG = "REDKEA";
+
+    /** The RTO used for silence limits before the first RTT sample and as the lower bound. */
+    private static final long MIN_RTO = TimeUnit.MILLISECONDS.toNanos(200);
+    private final Network network;
+    private final Manager manager;
+    private final Metrics metrics;
+    private final Selector selector;
+    private final CommandQueue commandQueue = new CommandQueue();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private final Queue<SocketChannel> adopted = new ConcurrentLinkedQueue<>();
+    // connections assigned to the reactor, including adopted ones that are not registered yet
+    private final AtomicInteger load = new AtomicInteger();
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Connection> dirtyConnections = new ArrayList<>();
+    /** The frames of the command being written, indexed by protocol version. */
+    private final Frame[] encoded = new Frame[Command.VERSION_2 + 1];
+    private long nextHeartbeat = 0;
+    // cleared once the reactor thread has ended, after which it takes no more connections
+    private volatile boolean running = true;
+
+    Reactor(Network network, Manager manager, Metrics metrics) throws IOException {
+        this.network = network;
+        this.manager = manager;
+        this.metrics = metrics;
+        this.selector = SelectorProvider.provider().openSelector();
+    }
+
+    /**
+     * @return The number of connections the reactor serves or is about to serve.
+     */
+    int getLoad() {
+        return this.load.get();
+    }
+
+    boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Takes over a freshly accepted channel. May be called from any thread.
+     */
+    void adopt(SocketChannel channel) {
+        this.load.incrementAndGet();
+        this.adopted.offer(channel);
+        if (this.running) {
+            this.selector.wakeup();
+        } else {
+            // the reactor ended while the channel was handed over
+            closeAdopted();
+        }
+    }
+
+    /**
+     * Queues a command for those of its target connections that belong to this reactor, or for
+     * all of them if it has no targets. May be called from any thread; only the first command
+     * after the reactor has started draining wakes up the selector.
+     */
+    void sendCommand(Command command) {
+        this.commandQueue.offer(command);
+        if (!this.wakeupPending.get() && this.wakeupPending.compareAndSet(false, true)) {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Makes the reactor pick up changed heartbeat settings.
+     */
+    void wakeup() {
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        boolean failed = false;
+        try {
+            while (!Thread.interrupted()) {
+                long interval = this.network.getHeartbeatInterval();
+                if (interval > 0) {
+                    long now = System.nanoTime();
+                    if (now - this.nextHeartbeat >= 0) {
+                        heartbeat(now, interval);
+                        this.nextHeartbeat = now + interval;
+                    }
+                    this.selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(this.nextHeartbeat - now)));
+                } else {
+                    this.selector.select();
+                }
+
+                registerAdopted();
+                this.wakeupPending.set(false);
+                writePendingCommands();
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(connection);
+                    }
+                }
+
+                flushDirtyConnections();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Reactor thread failed", e);
+            failed = true;
+        } finally {
+            shutdown();
+        }
+        if (failed) {
+            this.network.reactorFailed();
+        }
+    }
+
+    private void shutdown() {
+        this.running = false;
+        for (Connection connection : this.connections) {
+            connection.close();
+            this.metrics.recordConnectionClosed();
+            this.network.connectionClosed();
+        }
+        this.connections.clear();
+        closeAdopted();
+        Command command = this.commandQueue.drain();
+        while (command != null) {
+            Command next = command.next;
+            command.recycle();
+            command = next;
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            // ignore
+            Log.d(TAG, "Error closing selector: " + e.toString());
+        }
+    }
+
+    private void closeAdopted() {
+        SocketChannel channel;
+        while ((channel = this.adopted.poll()) != null) {
+            this.load.decrementAndGet();
+            this.network.connectionClosed();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Registers the channels the acceptor handed over since the last loop. Every connection gets
+     * its own decoder and outbound buffer, so partial frames survive in both directions.
+     */
+    private void registerAdopted() {
+        SocketChannel channel;
+        while ((channel = this.adopted.poll()) != null) {
+            Connection connection;
+            try {
+                connection = new Connection(this.network.nextConnectionId(), channel, this.selector, this.metrics);
+            } catch (IOException e) {
+                Log.d(TAG, "Dropping connection: " + e.toString());
+                this.load.decrementAndGet();
+                this.network.connectionClosed();
+                try {
+                    channel.close();
+                } catch (IOException closeFailed) {
+                    // ignore
+                }
+                continue;
+            }
+            connection.reactor = this;
+            this.connections.add(connection);
+            this.metrics.recordConnectionOpened();
+            record(SessionRecorder.OPEN, connection, null);
+            this.network.callOnConnect();
+        }
+    }
+
+    /**
+     * Encodes every queued command once per protocol version in use and hands a reference to the
+     * matching frame to each of its target connections on this reactor that announced the
+     * capabilities the command needs.
+     */
+    private void writePendingCommands() {
+        Command command = this.commandQueue.drain();
+        while (command != null) {
+            Command next = command.next;
+            if (command.targets == null) {
+                for (int i = this.connections.size() - 1; i >= 0; --i) {
+                    Connection connection = this.connections.get(i);
+                    if (connection.hasCapabilities(command.requiredCapabilities)) {
+                        enqueue(connection, command, encode(command, connection.getProtocolVersion()));
+                    }
+                }
+            } else {
+                for (Connection connection : command.targets) {
+                    if (connection.reactor == this && connection.isOpen()
+                            && connection.hasCapabilities(command.requiredCapabilities)) {
+                        enqueue(connection, command, encode(command, connection.getProtocolVersion()));
+                    }
+                }
+            }
+            for (int version = 0; version < this.encoded.length; ++version) {
+                if (this.encoded[version] != null) {
+                    this.encoded[version].release();
+                    this.encoded[version] = null;
+                }
+            }
+            command.recycle();
+            command = next;
+        }
+    }
+
+    private Frame encode(Command command, int version) {
+        Frame frame = this.encoded[version];
+        if (frame == null) {
+            frame = Frame.encode(command, version);
+            this.encoded[version] = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * Closes the heartbeat connections that have been silent for too long, which catches peers
+     * that vanished without closing the socket, and sends the others a PING.
+     */
+    private void heartbeat(long now, long interval) {
+        int silenceMultiple = this.network.getSilenceMultiple();
+        for (int i = this.connections.size() - 1; i >= 0; --i) {
+            Connection connection = this.connections.get(i);
+            if (!connection.isHeartbeatEnabled()) {
+                continue;
+            }
+            long rto = MIN_RTO;
+            if (connection.getSmoothedRtt() >= 0) {
+                rto = Math.max(MIN_RTO, connection.getSmoothedRtt() + 4 * connection.getRttVariance());
+            }
+            if (now - connection.getLastReceivedAt() > silenceMultiple * (interval + rto)) {
+                Log.d(TAG, "Closing silent connection " + connection.getId());
+                this.metrics.recordReaped();
+                close(connection);
+                continue;
+            }
+            Command ping = Command.obtain();
+            ping.setCommandType(CommandType.PING);
+            ping.addInt16(connection.nextPing(now));
+            try {
+                reply(connection, ping);
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+        flushDirtyConnections();
+    }
+
+    private void enqueue(Connection connection, Command command, Frame frame) {
+        try {
+            connection.enqueue(frame);
+            this.metrics.recordFrameOut(command.getCommandType(), frame.length());
+            record(SessionRecorder.OUT, connection, frame);
+            markDirty(connection);
+        } catch (IOException e) {
+            Log.d(TAG, "Dropping connection: " + e.toString());
+            close(connection);
+        }
+    }
+
+    private void markDirty(Connection connection) {
+        if (!connection.dirty) {
+            connection.dirty = true;
+            this.dirtyConnections.add(connection);
+        }
+    }
+
+    /**
+     * Writes the output of every connection that received data in this loop, so the interest
+     * ops of idle connections are never touched.
+     */
+    private void flushDirtyConnections() {
+        for (int i = 0; i < this.dirtyConnections.size(); ++i) {
+            Connection connection = this.dirtyConnections.get(i);
+            connection.dirty = false;
+            if (connection.isOpen()) {
+                write(connection);
+            }
+        }
+        this.dirtyConnections.clear();
+    }
+
+    private void write(Connection connection) {
+        try {
+            connection.flush();
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void read(Connection connection) {
+        FrameDecoder decoder = connection.getDecoder();
+        try {
+            this.metrics.recordWireIn(decoder.readFrom(connection.getChannel()));
+            long readAt = System.nanoTime();
+            connection.markReceived(readAt);
+            Command command;
+            while ((command = decoder.nextFrame()) != null) {
+                this.metrics.recordFrameIn(command.getCommandType(), decoder.getLastFrameSize());
+                SessionRecorder recorder = this.network.getRecorder();
+                if (recorder != null) {
+                    recorder.record(SessionRecorder.IN, connection, decoder.getLastFrame());
+                }
+                if (command.getCommandType() == CommandType.PING) {
+                    command.setCommandType(CommandType.PONG);
+                    reply(connection, command);
+                } else if (command.getCommandType() == CommandType.WELCOME) {
+                    welcome(connection, command);
+                } else if (command.getCommandType() == CommandType.PONG) {
+                    if (command.getParamCount() == 1 && command.getParamType(0) == Command.TYPE_INT16) {
+                        long rtt = connection.onPong(command.getInt16(0), readAt);
+                        if (rtt >= 0) {
+                            this.metrics.recordRtt(rtt);
+                        }
+                    }
+                    command.recycle();
+                } else {
+                    if (this.metrics.getTracer().sample(command)) {
+                        command.stamp(Tracer.STAGE_READ, readAt);
+                        command.stamp(Tracer.STAGE_DECODED);
+                    }
+                    command.source = connection;
+                    CommandType type = command.getCommandType();
+                    try {
+                        this.manager.dispatch(command);
+                    } catch (IOException e) {
+                        // a pin that can't be written is no reason to drop the client
+                        Log.w(TAG, "Error handling a " + type + " frame from connection " + connection.getId(), e);
+                        command.recycle();
+                    } catch (RuntimeException e) {
+                        // a frame with unexpected parameters only costs its own connection
+                        Log.w(TAG, "Closing connection " + connection.getId() + " after a bad " + type
+                                + " frame", e);
+                        command.recycle();
+                        close(connection);
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // client closed connection; that's ok
+            close(connection);
+        }
+    }
+
+    private void reply(Connection connection, Command command) throws IOException {
+        Frame frame = Frame.encode(command, connection.getProtocolVersion());
+        this.metrics.recordFrameOut(command.getCommandType(), frame.length());
+        record(SessionRecorder.OUT, connection, frame);
+        command.recycle();
+        try {
+            connection.enqueue(frame);
+        } finally {
+            frame.release();
+        }
+        markDirty(connection);
+    }
+
+    /**
+     * Answers the handshake of a client that announces the highest protocol version and the
+     * capabilities it supports. The reply carries the version and capabilities both sides share
+     * and is still encoded in the old version; every frame after it uses the new one. Clients
+     * that never send a WELCOME stay on version 1 without any capabilities.
+     */
+    private void welcome(Connection connection, Command command) throws IOException {
+        int version = Command.VERSION_1;
+        int capabilities = 0;
+        if (command.getParamCount() >= 1 && command.getParamType(0) == Command.TYPE_INT8) {
+            version = Math.max(Command.VERSION_1, Math.min(command.getInt8(0), Command.VERSION_2));
+        }
+        if (command.getParamCount() >= 2 && command.getParamType(1) == Command.TYPE_INT16) {
+            capabilities = command.getInt16(1) & Network.SUPPORTED_CAPABILITIES;
+        }
+        command.recycle();
+
+        Command reply = Command.obtain();
+        reply.setCommandType(CommandType.WELCOME);
+        reply.addInt8((byte) version);
+        reply.addInt16((short) capabilities);
+        reply(connection, reply);
+        connection.setProtocolVersion(version);
+        connection.setCapabilities(capabilities);
+        if ((capabilities & Network.CAP_DEFLATE) != 0) {
+            connection.enableCompression();
+        }
+        if ((capabilities & Network.CAP_HEARTBEAT) != 0) {
+            connection.enableHeartbeat();
+        }
+        Log.d(TAG, "Negotiated protocol version " + version + ", capabilities " + capabilities);
+    }
+
+    private void record(byte kind, Connection connection, Frame frame) {
+        SessionRecorder recorder = this.network.getRecorder();
+        if (recorder != null) {
+            recorder.record(kind, connection, (frame != null) ? frame.view(0) : null);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (this.connections.remove(connection)) {
+            this.load.decrementAndGet();
+            FrameDeflater deflater = connection.getDeflater();
+            if (deflater != null) {
+                Log.d(TAG, "Compressed " + deflater.getBytesIn() + " bytes to " + deflater.getBytesOut()
+                        + " in " + deflater.getNanos() / 1000000 + "ms");
+            }
+            connection.close();
+            this.metrics.recordConnectionClosed();
+            record(SessionRecorder.CLOSE, connection, null);
+            this.manager.disconnect(connection, this.network.connectionClosed() == 0);
+            this.network.callOnDisconnect();
+        }
+    }
+}
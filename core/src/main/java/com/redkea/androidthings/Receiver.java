@@ -0,0 +1,168 @@
+package com.redkea.androidthings;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * A registered receive function together with the queue of frames waiting for it.
+ * <p>
+ * Frames are queued by the reactor threads. Only one drain task per receiver is ever submitted to
+ * the executor, which keeps the calls for one key in order even on a pool of threads, while the
+ * receivers of other keys run in parallel. A drain task hands the thread back after a few frames,
+ * so a busy key cannot starve the others on a shared executor.
+ * <p>
+ * The queue is bounded by the {@link InboundPolicy} of the receiver, so it holds at most one
+ * frame when only the latest value counts. Frames that arrive after {@link #close()}, or that the
+ * executor rejects, are dropped and counted like the ones the policy drops.
+ */
+class Receiver implements Runnable {
+    private static String TAG = "REDKEA";
+    private static final int MAX_FRAMES_PER_RUN = 16;
+
+    private final String key;
+    private final ReceiveFunction receiveFunction;
+    private final Executor executor;
+    // the executor if it is owned by this receiver and has to be shut down with it
+    private final ExecutorService ownExecutor;
+    private final InboundPolicy policy;
+    private final ReceiverStats stats = new ReceiverStats();
+    private final Metrics metrics;
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    private boolean scheduled = false;
+    private boolean closed = false;
+
+    Receiver(String key, ReceiveFunction receiveFunction, Executor executor, ExecutorService ownExecutor,
+             InboundPolicy policy, Metrics metrics) {
+        this.key = key;
+        this.receiveFunction = receiveFunction;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    ReceiverStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Queues a WRITE_TO_FUNCTION command; it is recycled once the receive function has seen it or
+     * the {@link InboundPolicy} drops it.
+     */
+    void offer(Command command) {
+        command.queuedAt = System.nanoTime();
+        command.stamp(Tracer.STAGE_QUEUED, command.queuedAt);
+        boolean schedule;
+        synchronized (this) {
+            if (this.closed) {
+                command.recycle();
+                this.stats.recordDropped();
+                return;
+            }
+            while (this.queue.size() >= this.policy.getBound()) {
+                this.queue.poll().recycle();
+                this.stats.recordDropped();
+            }
+            this.queue.add(command);
+            schedule = !this.scheduled;
+            this.scheduled = true;
+        }
+        if (schedule) {
+            schedule();
+        }
+    }
+
+    /**
+     * Hands the receiver to its executor, or drops the queued commands if the executor has been
+     * shut down.
+     */
+    private void schedule() {
+        try {
+            this.executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                Command command;
+                while ((command = this.queue.poll()) != null) {
+                    command.recycle();
+                    this.stats.recordDropped();
+                }
+                this.scheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Drops all queued commands.
+     */
+    void clear() {
+        synchronized (this) {
+            Command command;
+            while ((command = this.queue.poll()) != null) {
+                command.recycle();
+            }
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        clear();
+        if (this.ownExecutor != null) {
+            this.ownExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < MAX_FRAMES_PER_RUN; ++i) {
+            Command command;
+            synchronized (this) {
+                command = this.queue.poll();
+                if (command == null) {
+                    this.scheduled = false;
+                    return;
+                }
+            }
+            deliver(command);
+        }
+        schedule();
+    }
+
+    private void deliver(Command command) {
+        long start = System.nanoTime();
+        command.stamp(Tracer.STAGE_CALLBACK_START, start);
+        try {
+            this.receiveFunction.onReceive(new ParameterParser(command, 1));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Receiver " + this.key + " failed", e);
+        }
+        long end = System.nanoTime();
+        command.stamp(Tracer.STAGE_CALLBACK_END, end);
+        this.stats.record(start - command.queuedAt, end - start);
+        this.metrics.recordDispatch(start - command.queuedAt, end - start);
+        command.recycle();
+    }
+}
@@ -0,0 +1,89 @@
+package com.redkea.androidthings;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Timing of the calls made to one receive function. Queue time is measured from the arrival of a
+ * frame on the network thread to the start of the call, run time is the duration of the call.
+ * All times are in nanoseconds.
+ */
+public final class ReceiverStats {
+    private final Histogram queueTime = new Histogram();
+    private final Histogram runTime = new Histogram();
+    private final AtomicLong dropped = new AtomicLong();
+
+    ReceiverStats() {
+    }
+
+    void record(long queueNanos, long runNanos) {
+        this.queueTime.record(queueNanos);
+        this.runTime.record(runNanos);
+    }
+
+    /**
+     * @return The number of calls made so far.
+     */
+    public long getCount() {
+        return this.runTime.getCount();
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     */
+    public long getQueueTimeAtPercentile(double percentile) {
+        return this.queueTime.getValueAtPercentile(percentile);
+    }
+
+    public long getMaxQueueTime() {
+        return this.queueTime.getMax();
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     */
+    public long getRunTimeAtPercentile(double percentile) {
+        return this.runTime.getValueAtPercentile(percentile);
+    }
+
+    public long getMaxRunTime() {
+        return this.runTime.getMax();
+    }
+
+    /**
+     * @return The number of frames the {@link InboundPolicy} dropped before they reached the
+     * receive function.
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    void recordDropped() {
+        this.dropped.incrementAndGet();
+    }
+
+    void reset() {
+        this.dropped.set(0);
+        this.queueTime.reset();
+        this.runTime.reset();
+    }
+}
@@ -0,0 +1,159 @@
+package com.redkea.androidthings;
+
+import java.nio.ByteBuffer;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Timestamped float samples collected for a chart widget and sent as one frame with
+ * {@link Sender#sendSamples(SampleBatch)}. A sensor thread can add samples while a send function
+ * sends them; the batch is empty again after every send.
+ * <p>
+ * Times are microseconds of any monotonic clock, {@link System#nanoTime()} / 1000 by default;
+ * apps only use their differences. On the wire the batch is the bytes parameter of a
+ * DATA_SEND_SERIES frame: {@code [flags][varint count][int64 first time][times][float32 values]}.
+ * With {@link #FLAG_EVEN} the times are a single zigzag varint interval, otherwise the zigzag
+ * varint differences between consecutive samples. Everything is little endian.
+ */
+public final class SampleBatch {
+    /** The most samples one frame carries, which keeps it below the 64 KiB payload limit. */
+    public static final int MAX_SAMPLES = 4096;
+    /** Flag of the wire format: the samples are evenly spaced. */
+    static final int FLAG_EVEN = 0x01;
+
+    private final long[] times;
+    private final float[] values;
+    private int size = 0;
+
+    /**
+     * @param capacity The number of samples the batch holds, at most {@link #MAX_SAMPLES}.
+     */
+    public SampleBatch(int capacity) {
+        if (capacity < 1 || capacity > MAX_SAMPLES) {
+            throw new IllegalArgumentException("Capacity " + capacity + " not in [1, " + MAX_SAMPLES + "]");
+        }
+        this.times = new long[capacity];
+        this.values = new float[capacity];
+    }
+
+    /**
+     * Adds a sample taken now.
+     *
+     * @return False if the batch is full and the sample was dropped.
+     */
+    public boolean add(float value) {
+        return add(System.nanoTime() / 1000, value);
+    }
+
+    /**
+     * Adds a sample taken at the given time in microseconds.
+     *
+     * @return False if the batch is full and the sample was dropped.
+     */
+    public synchronized boolean add(long timeMicros, float value) {
+        if (this.size == this.values.length) {
+            return false;
+        }
+        this.times[this.size] = timeMicros;
+        this.values[this.size] = value;
+        this.size++;
+        return true;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.values.length;
+    }
+
+    public synchronized void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Adds the samples as a bytes parameter to the command and empties the batch.
+     *
+     * @return Whether there were any samples.
+     */
+    synchronized boolean moveTo(Command command) {
+        if (this.size == 0) {
+            return false;
+        }
+        encode(command, this.times, this.values, 0, this.size, 0, 0);
+        this.size = 0;
+        return true;
+    }
+
+    /**
+     * Adds the samples as a bytes parameter to the command, at the given times if there are any,
+     * else evenly spaced by the interval from the first time.
+     */
+    static void encode(Command command, long[] times, float[] values, int offset, int count, long firstTime,
+                       long interval) {
+        int size = 1 + varintSize(count) + 8 + 4 * count;
+        if (times == null) {
+            size += varintSize(zigzag(interval));
+        } else {
+            for (int i = offset + 1; i < offset + count; ++i) {
+                size += varintSize(zigzag(times[i] - times[i - 1]));
+            }
+        }
+
+        ByteBuffer out = command.addBytes(size);
+        out.put((byte) ((times == null) ? FLAG_EVEN : 0));
+        putVarint(out, count);
+        if (times == null) {
+            out.putLong(firstTime);
+            putVarint(out, zigzag(interval));
+        } else {
+            out.putLong(times[offset]);
+            for (int i = offset + 1; i < offset + count; ++i) {
+                putVarint(out, zigzag(times[i] - times[i - 1]));
+            }
+        }
+        for (int i = offset; i < offset + count; ++i) {
+            out.putFloat(values[i]);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
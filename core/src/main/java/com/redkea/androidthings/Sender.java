@@ -0,0 +1,179 @@
+package com.redkea.androidthings;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Sends data to the widget of a send function on the apps that set up its timer.
+ * <p>
+ * Text reaches every app. Numbers, booleans, gauges and series are only sent to apps that
+ * announced typed data in their WELCOME, since older apps do not know these frame layouts; the
+ * others simply do not get them.
+ */
+public class Sender {
+    private Network network;
+    private String widgetID;
+    private Collection<Connection> targets;
+
+    Sender(Network network, String widgetID, Collection<Connection> targets) {
+        this.network = network;
+        this.widgetID = widgetID;
+        this.targets = targets;
+    }
+
+    /**
+     * @return The smoothed round-trip time to the slowest app this sender sends to, in
+     * milliseconds, or -1 if none of them answers heartbeats. Lets a send function send less
+     * often or less data over a poor link.
+     */
+    public long getRoundTripTimeMillis() {
+        long rtt = -1;
+        for (Connection connection : this.targets) {
+            rtt = Math.max(rtt, connection.getSmoothedRtt());
+        }
+        return (rtt < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(rtt);
+    }
+
+    /**
+     * @return The round-trip time variance to the app with the slowest link, in milliseconds, or
+     * -1 if none of them answers heartbeats.
+     */
+    public long getRoundTripTimeVarianceMillis() {
+        Connection slowest = null;
+        for (Connection connection : this.targets) {
+            if (slowest == null || connection.getSmoothedRtt() > slowest.getSmoothedRtt()) {
+                slowest = connection;
+            }
+        }
+        if (slowest == null || slowest.getSmoothedRtt() < 0) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(slowest.getRttVariance());
+    }
+
+    public void sendToTextOutput(String text) {
+        Command command = obtain(CommandType.DATA_SEND);
+        command.addString(text);
+        send(command);
+    }
+
+    /**
+     * Sends a number without formatting it. Values that fit into 16 bits are sent as integers,
+     * all others as floats.
+     */
+    public void sendToNumberOutput(int value) {
+        Command command = obtainTyped(CommandType.DATA_SEND);
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            command.addInt16((short) value);
+        } else {
+            command.addFloat(value);
+        }
+        send(command);
+    }
+
+    public void sendToNumberOutput(float value) {
+        Command command = obtainTyped(CommandType.DATA_SEND);
+        command.addFloat(value);
+        send(command);
+    }
+
+    public void sendToBooleanOutput(boolean value) {
+        Command command = obtainTyped(CommandType.DATA_SEND);
+        command.addBool(value);
+        send(command);
+    }
+
+    /**
+     * Sends a gauge reading together with the range the gauge shows.
+     */
+    public void sendToGauge(float value, float min, float max) {
+        Command command = obtainTyped(CommandType.DATA_SEND);
+        command.addFloat(value);
+        command.addFloat(min);
+        command.addFloat(max);
+        send(command);
+    }
+
+    /**
+     * Sends consecutive samples to a chart without timing, the last one taken now. Long series
+     * are split into frames of {@link SampleBatch#MAX_SAMPLES}.
+     */
+    public void sendSeries(float[] values, int offset, int length) {
+        sendSeries(values, offset, length, 0, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Sends samples to a chart that were taken at the given interval, the last one now. Long
+     * series are split into frames of {@link SampleBatch#MAX_SAMPLES}.
+     */
+    public void sendSeries(float[] values, int offset, int length, long interval, TimeUnit unit) {
+        if (offset < 0 || length < 0 || offset + length > values.length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") of "
+                    + values.length);
+        }
+        long intervalMicros = unit.toMicros(interval);
+        long firstTime = System.nanoTime() / 1000 - (length - 1) * intervalMicros;
+        for (int sent = 0; sent < length; sent += SampleBatch.MAX_SAMPLES) {
+            int count = Math.min(SampleBatch.MAX_SAMPLES, length - sent);
+            Command command = obtainTyped(CommandType.DATA_SEND_SERIES);
+            SampleBatch.encode(command, null, values, offset + sent, count, firstTime + sent * intervalMicros,
+                    intervalMicros);
+            send(command);
+        }
+    }
+
+    /**
+     * Sends the samples collected in the batch as one frame and empties it. Sends nothing if the
+     * batch is empty.
+     */
+    public void sendSamples(SampleBatch batch) {
+        Command command = obtainTyped(CommandType.DATA_SEND_SERIES);
+        if (batch.moveTo(command)) {
+            send(command);
+        } else {
+            command.recycle();
+        }
+    }
+
+    private Command obtain(CommandType commandType) {
+        Command command = Command.obtain();
+        command.setCommandType(commandType);
+        command.addString(this.widgetID);
+        return command;
+    }
+
+    /**
+     * Like {@link #obtain(CommandType)}, for the frames only apps that announced
+     * {@link Network#CAP_TYPED_DATA} in WELCOME receive.
+     */
+    private Command obtainTyped(CommandType commandType) {
+        Command command = obtain(commandType);
+        command.requiredCapabilities = Network.CAP_TYPED_DATA;
+        return command;
+    }
+
+    private void send(Command command) {
+        command.targets = this.targets;
+        this.network.sendCommand(command);
+    }
+}
@@ -0,0 +1,147 @@
+package com.redkea.androidthings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Appends the frames of all connections to memory-mapped segment files, for {@code SessionReplay}
+ * of the loadgen module to play back.
+ * <p>
+ * A segment starts with the int {@link #MAGIC} and the int {@link #FORMAT_VERSION}, followed by
+ * little endian entries: the byte kind ({@link #IN}, {@link #OUT}, {@link #OPEN} or
+ * {@link #CLOSE}), the byte protocol version of the connection, the int connection id, the long
+ * {@link System#nanoTime()}, the int frame length and the encoded frame. A zero kind ends the
+ * segment; the next one continues in the file with the following number.
+ * <p>
+ * Frames are copied straight from the direct frame buffers into the mapping, so recording costs
+ * one memory copy per frame and no system call until a segment is full.
+ */
+class SessionRecorder {
+    private static String TAG = "REDKEA";
+
+    static final int MAGIC = 0x524b5352;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int ENTRY_HEADER_SIZE = 18;
+
+    static final byte IN = 1;
+    static final byte OUT = 2;
+    static final byte OPEN = 3;
+    static final byte CLOSE = 4;
+
+    private static final int SEGMENT_SIZE = 8 << 20;
+
+    private final File directory;
+    private MappedByteBuffer segment = null;
+    private int segmentCount = 0;
+    private long bytes = 0;
+    private boolean closed = false;
+
+    SessionRecorder(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        nextSegment(0);
+    }
+
+    /**
+     * @return The name of the segment file with the given number.
+     */
+    static String segmentName(int number) {
+        return String.format(Locale.US, "session-%05d.rec", number);
+    }
+
+    /**
+     * Appends an entry. The frame, if any, is copied from its position to its limit and left
+     * unchanged.
+     */
+    synchronized void record(byte kind, Connection connection, ByteBuffer frame) {
+        if (this.closed) {
+            return;
+        }
+        int length = (frame != null) ? frame.remaining() : 0;
+        try {
+            if (this.segment.remaining() < ENTRY_HEADER_SIZE + length + 1) {
+                nextSegment(ENTRY_HEADER_SIZE + length + 1);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Stopping the session recording", e);
+            close();
+            return;
+        }
+        this.segment.put(kind);
+        this.segment.put((byte) connection.getProtocolVersion());
+        this.segment.putInt(connection.getId());
+        this.segment.putLong(System.nanoTime());
+        this.segment.putInt(length);
+        if (frame != null) {
+            int position = frame.position();
+            this.segment.put(frame);
+            frame.position(position);
+        }
+        this.bytes += ENTRY_HEADER_SIZE + length;
+    }
+
+    /**
+     * @return The number of bytes recorded so far.
+     */
+    synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Writes the mapped pages back to the files and stops recording.
+     */
+    synchronized void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.segment.force();
+            this.segment = null;
+        }
+    }
+
+    private void nextSegment(int minFree) throws IOException {
+        if (this.segment != null) {
+            this.segment.force();
+        }
+        File file = new File(this.directory, segmentName(this.segmentCount++));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // the mapping stays valid after the file is closed
+            this.segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(SEGMENT_SIZE, HEADER_SIZE + minFree));
+        } finally {
+            raf.close();
+        }
+        this.segment.order(ByteOrder.LITTLE_ENDIAN);
+        this.segment.putInt(MAGIC);
+        this.segment.putInt(FORMAT_VERSION);
+    }
+}
@@ -0,0 +1,268 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * In-memory peripheral backend for running the library without hardware, e.g. for load tests on
+ * a build machine. Pins spring into existence when they are first opened or set, and tests can
+ * drive inputs with {@link #setValue(String, boolean)} or {@link #injectEdge(String, boolean)} and
+ * inspect outputs.
+ */
+public class SimulatedBackend implements PeripheralBackend {
+    private final Map<String, SimulatedGpio> gpios = new HashMap<>();
+    private final Map<String, SimulatedPwm> pwms = new HashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+
+    @Override
+    public synchronized GpioPin openGpio(String name) throws IOException {
+        SimulatedGpio gpio = gpio(name);
+        if (gpio.open) {
+            throw new IOException("GPIO " + name + " is already open");
+        }
+        gpio.open = true;
+        this.callCount.incrementAndGet();
+        return gpio;
+    }
+
+    @Override
+    public synchronized PwmPin openPwm(String name) throws IOException {
+        SimulatedPwm pwm = pwm(name);
+        if (pwm.open) {
+            throw new IOException("PWM " + name + " is already open");
+        }
+        pwm.open = true;
+        this.callCount.incrementAndGet();
+        return pwm;
+    }
+
+    /**
+     * Sets the level of a pin, as if it was driven from outside. A change is reported to the edge
+     * listener of the pin.
+     */
+    public void setValue(String name, boolean value) {
+        EdgeListener listener;
+        SimulatedGpio gpio;
+        synchronized (this) {
+            gpio = gpio(name);
+            boolean changed = gpio.value != value;
+            gpio.value = value;
+            listener = changed ? gpio.edgeListener : null;
+        }
+        if (listener != null) {
+            listener.onEdge(gpio, value, System.nanoTime());
+        }
+    }
+
+    /**
+     * Sets the level of a pin and reports an edge to its listener even if the level did not change,
+     * like a bouncing contact or a pulse too short to be read back.
+     */
+    public void injectEdge(String name, boolean value) {
+        injectEdge(name, value, System.nanoTime());
+    }
+
+    /**
+     * Like {@link #injectEdge(String, boolean)}, for an edge seen at the given
+     * {@link System#nanoTime()}.
+     */
+    public void injectEdge(String name, boolean value, long timestampNanos) {
+        EdgeListener listener;
+        SimulatedGpio gpio;
+        synchronized (this) {
+            gpio = gpio(name);
+            gpio.value = value;
+            listener = gpio.edgeListener;
+        }
+        if (listener != null) {
+            listener.onEdge(gpio, value, timestampNanos);
+        }
+    }
+
+    /**
+     * @return The current level of a pin.
+     */
+    public synchronized boolean getValue(String name) {
+        return gpio(name).value;
+    }
+
+    /**
+     * @return The duty cycle of a PWM output, or 0 if it is disabled.
+     */
+    public synchronized double getDutyCycle(String name) {
+        SimulatedPwm pwm = pwm(name);
+        return pwm.enabled ? pwm.dutyCycle : 0;
+    }
+
+    /**
+     * @return Whether a pin or PWM output with the given name is currently open.
+     */
+    public synchronized boolean isOpen(String name) {
+        return (this.gpios.containsKey(name) && this.gpios.get(name).open)
+                || (this.pwms.containsKey(name) && this.pwms.get(name).open);
+    }
+
+    /**
+     * @return The number of calls made into the backend so far, which stand for hardware
+     * accesses on a real board.
+     */
+    public long getCallCount() {
+        return this.callCount.get();
+    }
+
+    private SimulatedGpio gpio(String name) {
+        SimulatedGpio gpio = this.gpios.get(name);
+        if (gpio == null) {
+            gpio = new SimulatedGpio(name);
+            this.gpios.put(name, gpio);
+        }
+        return gpio;
+    }
+
+    private SimulatedPwm pwm(String name) {
+        SimulatedPwm pwm = this.pwms.get(name);
+        if (pwm == null) {
+            pwm = new SimulatedPwm(name);
+            this.pwms.put(name, pwm);
+        }
+        return pwm;
+    }
+
+    private class SimulatedGpio implements GpioPin {
+        private final String name;
+        private boolean open;
+        private int direction = DIRECTION_IN;
+        private boolean value;
+        private EdgeListener edgeListener;
+
+        SimulatedGpio(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void setDirection(int direction) throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                this.direction = direction;
+                if (direction != DIRECTION_IN) {
+                    this.value = (direction == DIRECTION_OUT_INITIALLY_HIGH);
+                }
+            }
+        }
+
+        @Override
+        public void setValue(boolean value) throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                if (this.direction == DIRECTION_IN) {
+                    throw new IOException("GPIO " + this.name + " is an input");
+                }
+                this.value = value;
+            }
+        }
+
+        @Override
+        public boolean getValue() throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                return this.value;
+            }
+        }
+
+        @Override
+        public void setEdgeListener(EdgeListener listener) throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                this.edgeListener = listener;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (SimulatedBackend.this) {
+                this.open = false;
+                this.edgeListener = null;
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (!this.open) {
+                throw new IOException("GPIO " + this.name + " is closed");
+            }
+            callCount.incrementAndGet();
+        }
+    }
+
+    private class SimulatedPwm implements PwmPin {
+        private final String name;
+        private boolean open;
+        private boolean enabled;
+        private double frequencyHz;
+        private double dutyCycle;
+
+        SimulatedPwm(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void setFrequencyHz(double frequencyHz) throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                this.frequencyHz = frequencyHz;
+            }
+        }
+
+        @Override
+        public void setDutyCycle(double dutyCycle) throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                this.dutyCycle = dutyCycle;
+            }
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            synchronized (SimulatedBackend.this) {
+                checkOpen();
+                this.enabled = enabled;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (SimulatedBackend.this) {
+                this.open = false;
+                this.enabled = false;
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (!this.open) {
+                throw new IOException("PWM " + this.name + " is closed");
+            }
+            callCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.redkea.androidthings;
+
+import com.redkea.androidthings.PeripheralBackend.GpioPin;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Timers that send data to the connections subscribed to them.
+ * <p>
+ * Every connection subscribes to the timers of its last SETUP_TIMERS command. Connections asking
+ * for the same timer share it, so its value is read and encoded once per tick no matter how many
+ * dashboards watch it. A timer stops when its last subscriber disconnects.
+ * <p>
+ * All timers run at a fixed rate on one {@link TimingWheel} thread, away from the callback
+ * executor; function timers only hand their send function over to it. Digital pin timers either
+ * poll their pin or, depending on the {@link DigitalInputPolicy}, send changes reported by an
+ * {@link EdgeInput}. With batching enabled, polled pins with the same interval are read together by
+ * a {@link PinGroup} and sent as one frame to the apps that support it.
+ */
+class Timers {
+    private static String TAG = "REDKEA";
+
+    private Network network;
+    private PeripheralBackend backend;
+    private Executor callbackExecutor;
+    private Map<String, SendFunction> senders = new HashMap<>();
+    private Map<String, GpioPin> gpioMap = new HashMap<>();
+    private Map<String, EdgeInput> edgeInputs = new HashMap<>();
+    private Map<String, Timer> timers = new HashMap<>();
+    private Map<Short, PinGroup> groups = new HashMap<>();
+    private volatile boolean batching = false;
+    private volatile DigitalInputPolicy inputPolicy = DigitalInputPolicy.polling();
+    private TimingWheel wheel;
+
+    Timers(Network network, PeripheralBackend backend, Executor callbackExecutor) {
+        this(network, backend, callbackExecutor, new TimingWheel("redkeaTimers", 1, TimeUnit.MILLISECONDS));
+    }
+
+    Timers(Network network, PeripheralBackend backend, Executor callbackExecutor, TimingWheel wheel) {
+        this.network = network;
+        this.backend = backend;
+        this.callbackExecutor = callbackExecutor;
+        this.wheel = wheel;
+    }
+
+    /**
+     * @return The delay between the deadlines of timer ticks and the moment they ran.
+     */
+    Histogram getJitter() {
+        return this.wheel.getJitter();
+    }
+
+    /**
+     * Runs the task on the callback executor at a fixed rate, starting after one period, so slow
+     * housekeeping never delays the timer ticks.
+     */
+    TimingWheel.Task scheduleOnCallbackExecutor(final Runnable runnable, long period, TimeUnit unit) {
+        return this.wheel.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                callbackExecutor.execute(runnable);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Replaces the subscriptions of the connection the command came from with the timers it lists.
+     */
+    synchronized void setup(Command command) throws IOException {
+        Connection connection = command.source;
+        unsubscribe(connection);
+
+        int index = 0;
+        short numTimers = command.getInt16(index++);
+        for (int i = 0; i < numTimers; ++i) {
+            CommandType commandType = CommandType.fromCode(command.getInt8(index++));
+            final String source = command.getString(index++);
+            final String widgetID = command.getString(index++);
+            final short interval = command.getInt16(index++);
+            if (commandType == CommandType.READ_FROM_FUNCTION || commandType == CommandType.READ_FROM_DIGITAL_PIN) {
+                subscribe(connection, commandType, source, widgetID, interval);
+            }
+        }
+        updateGroups();
+    }
+
+    /**
+     * Removes the connection from all timers and stops the ones nobody is subscribed to anymore.
+     */
+    synchronized void unsubscribe(Connection connection) {
+        Iterator<Timer> iterator = this.timers.values().iterator();
+        while (iterator.hasNext()) {
+            Timer timer = iterator.next();
+            timer.subscribers.remove(connection);
+            if (timer.subscribers.isEmpty()) {
+                stop(timer);
+                iterator.remove();
+            }
+        }
+        updateGroups();
+        closeUnusedPins();
+    }
+
+    /**
+     * Applies to digital pin timers set up from now on.
+     */
+    void setInputPolicy(DigitalInputPolicy inputPolicy) {
+        this.inputPolicy = inputPolicy;
+    }
+
+    /**
+     * Applies to polled digital pin timers set up from now on.
+     */
+    void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    void registerSender(String key, SendFunction sendFunction) {
+        this.senders.put(key, sendFunction);
+    }
+
+    void unregisterSender(String key) {
+        if (this.senders.containsKey(key)) {
+            this.senders.remove(key);
+        }
+    }
+
+    private void subscribe(Connection connection, CommandType commandType, String source, String widgetID, short interval) throws IOException {
+        // apps that do not read batched frames get their own timer sending one frame per pin
+        boolean batched = commandType == CommandType.READ_FROM_DIGITAL_PIN && this.batching
+                && !this.inputPolicy.isEdgeTriggered() && connection.hasCapabilities(Network.CAP_BATCH);
+        String key = commandType.getCode() + "/" + source + "/" + widgetID + "/" + interval + (batched ? "/batch" : "");
+        Timer timer = this.timers.get(key);
+        if (timer == null) {
+            timer = new Timer(commandType, source, widgetID);
+            if (commandType == CommandType.READ_FROM_FUNCTION) {
+                timer.task = setupFunctionTimer(source, widgetID, interval, timer.subscribers);
+            } else if (this.inputPolicy.isEdgeTriggered()) {
+                setupEdgeTimer(timer);
+            } else if (batched) {
+                setupGroupedTimer(timer, interval);
+            } else {
+                timer.task = setupDigitalPinTimer(source, widgetID, interval, timer.subscribers);
+            }
+            this.timers.put(key, timer);
+        }
+        timer.subscribers.add(connection);
+        if (timer.edgeInput != null) {
+            // edge timers only send changes, so a new subscriber gets the current level right away
+            sendInitialValue(timer, connection);
+        }
+    }
+
+    private TimingWheel.Task setupFunctionTimer(final String source, final String widgetID, final short interval,
+                                                  final Collection<Connection> subscribers) {
+        // the timer thread only hands the send function over to the callback executor
+        final Runnable sendRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (!senders.containsKey(source)) {
+                    Log.d(TAG, "No sender registered for key " + source);
+                } else {
+                    senders.get(source).onSend(new Sender(network, widgetID, subscribers));
+                }
+            }
+        };
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                callbackExecutor.execute(sendRunnable);
+            }
+        };
+        return this.wheel.scheduleAtFixedRate(runnable, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private TimingWheel.Task setupDigitalPinTimer(final String source, final String widgetID, final short interval,
+                                                  final Collection<Connection> subscribers) throws IOException {
+        final GpioPin gpio = openInput(source);
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendPinValue(network, widgetID, gpio.getValue(), subscribers);
+                } catch (IOException e) {
+                    Log.d(TAG, "Error reading gpio: " + e.toString());
+                }
+            }
+        };
+        return this.wheel.scheduleAtFixedRate(runnable, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void setupEdgeTimer(Timer timer) throws IOException {
+        DigitalInputPolicy policy = this.inputPolicy;
+        final GpioPin gpio = openInput(timer.source);
+        EdgeInput edgeInput = this.edgeInputs.get(timer.source);
+        if (edgeInput == null) {
+            edgeInput = new EdgeInput(gpio, this.network, this.wheel, policy.getDebounceMillis());
+            this.edgeInputs.put(timer.source, edgeInput);
+        }
+        edgeInput.add(timer);
+        timer.edgeInput = edgeInput;
+
+        if (policy.getHeartbeatMillis() > 0) {
+            final String widgetID = timer.widgetID;
+            final Collection<Connection> subscribers = timer.subscribers;
+            Runnable heartbeat = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sendPinValue(network, widgetID, gpio.getValue(), subscribers);
+                    } catch (IOException e) {
+                        Log.d(TAG, "Error reading gpio: " + e.toString());
+                    }
+                }
+            };
+            long heartbeatMillis = policy.getHeartbeatMillis();
+            timer.task = this.wheel.scheduleAtFixedRate(heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void setupGroupedTimer(Timer timer, short interval) throws IOException {
+        timer.gpio = openInput(timer.source);
+        PinGroup group = this.groups.get(interval);
+        if (group == null) {
+            group = new PinGroup(this.network, interval);
+            group.start(this.wheel);
+            this.groups.put(interval, group);
+        }
+        group.add(timer);
+        timer.group = group;
+    }
+
+    /**
+     * Sends the new layouts of changed groups and stops the empty ones.
+     */
+    private void updateGroups() {
+        Iterator<PinGroup> iterator = this.groups.values().iterator();
+        while (iterator.hasNext()) {
+            PinGroup group = iterator.next();
+            if (group.isEmpty()) {
+                group.stop();
+                iterator.remove();
+            } else {
+                group.update();
+            }
+        }
+    }
+
+    private void sendInitialValue(Timer timer, Connection connection) {
+        final GpioPin gpio = this.gpioMap.get(timer.source);
+        final String widgetID = timer.widgetID;
+        final Collection<Connection> target = Collections.singleton(connection);
+        this.wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendPinValue(network, widgetID, gpio.getValue(), target);
+                } catch (IOException e) {
+                    Log.d(TAG, "Error reading gpio: " + e.toString());
+                }
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private GpioPin openInput(String source) throws IOException {
+        GpioPin gpio = this.gpioMap.get(source);
+        if (gpio == null) {
+            gpio = this.backend.openGpio(source);
+            try {
+                gpio.setDirection(GpioPin.DIRECTION_IN);
+            } catch (IOException e) {
+                gpio.close();
+                throw e;
+            }
+            this.gpioMap.put(source, gpio);
+        }
+        return gpio;
+    }
+
+    static void sendPinValue(Network network, String widgetID, boolean value, Collection<Connection> targets) {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString(widgetID);
+        command.addBool(value);
+        command.targets = targets;
+        network.sendCommand(command);
+    }
+
+    private void stop(Timer timer) {
+        if (timer.task != null) {
+            timer.task.cancel();
+            logStats(timer);
+        }
+        if (timer.edgeInput != null) {
+            timer.edgeInput.remove(timer);
+        }
+        if (timer.group != null) {
+            timer.group.remove(timer);
+        }
+    }
+
+    private void logStats(Timer timer) {
+        TimingWheel.Task task = timer.task;
+        Log.d(TAG, "Timer " + timer.source + " stopped after " + task.getRuns() + " runs, jitter mean "
+                + TimeUnit.NANOSECONDS.toMicros(task.getMeanJitterNanos()) + "us max "
+                + TimeUnit.NANOSECONDS.toMicros(task.getMaxJitterNanos()) + "us, " + task.getOverruns() + " overruns");
+    }
+
+    private void closeUnusedPins() {
+        Iterator<Map.Entry<String, GpioPin>> iterator = this.gpioMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, GpioPin> entry = iterator.next();
+            if (!isPinUsed(entry.getKey())) {
+                EdgeInput edgeInput = this.edgeInputs.remove(entry.getKey());
+                if (edgeInput != null) {
+                    edgeInput.stop();
+                }
+                closeGpio(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean isPinUsed(String source) {
+        for (Timer timer : this.timers.values()) {
+            if (timer.commandType == CommandType.READ_FROM_DIGITAL_PIN && timer.source.equals(source)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void closeGpio(GpioPin gpio) {
+        try {
+            gpio.close();
+        } catch (IOException e) {
+            // ignore
+            Log.d(TAG, "Error closing gpio: " + e.toString());
+        }
+    }
+
+    synchronized void closeAllPins() {
+        for (Timer timer : this.timers.values()) {
+            stop(timer);
+        }
+        this.timers.clear();
+        updateGroups();
+
+        for (EdgeInput edgeInput : this.edgeInputs.values()) {
+            edgeInput.stop();
+        }
+        this.edgeInputs.clear();
+
+        for (GpioPin gpio : this.gpioMap.values()) {
+            closeGpio(gpio);
+        }
+        this.gpioMap.clear();
+    }
+
+    void shutdown() {
+        closeAllPins();
+        this.wheel.stop();
+    }
+
+    static class Timer {
+        final CommandType commandType;
+        final String source;
+        final String widgetID;
+        final Set<Connection> subscribers = new CopyOnWriteArraySet<>();
+        TimingWheel.Task task;
+        EdgeInput edgeInput;
+        PinGroup group;
+        GpioPin gpio;
+
+        Timer(CommandType commandType, String source, String widgetID) {
+            this.commandType = commandType;
+            this.source = source;
+            this.widgetID = widgetID;
+        }
+    }
+}
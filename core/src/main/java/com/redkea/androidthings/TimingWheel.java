@@ -0,0 +1,324 @@
+package com.redkea.androidthings;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Fixed-rate scheduler on a dedicated thread, driven by a hashed timing wheel.
+ * <p>
+ * Time is split into ticks, and every task sits in the wheel slot of the tick its next deadline
+ * falls into, so scheduling and expiring a task is constant time no matter how many are active.
+ * Tasks sharing a deadline tick run back to back in one wakeup. Deadlines advance by exactly one
+ * period from the previous deadline, not from the time the task actually ran, so the time spent in
+ * a task does not add up to drift. A task that falls behind by a whole period skips the missed
+ * runs and counts them as overruns instead of running in a burst.
+ * <p>
+ * The thread sleeps until the earliest deadline, skipping the empty ticks in between, so a single
+ * slow timer costs one wakeup per run. It parks while no task is scheduled.
+ */
+final class TimingWheel implements Runnable {
+    private static String TAG = "REDKEA";
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final long tickNanos;
+    private final Task[] wheel = new Task[WHEEL_SIZE];
+    private final ConcurrentLinkedQueue<Task> added = new ConcurrentLinkedQueue<>();
+    private final Histogram jitter = new Histogram();
+    private final Clock clock;
+    private final Thread thread;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick = 0;
+    private int taskCount = 0;
+
+    TimingWheel(String name, long tickDuration, TimeUnit unit) {
+        this(tickDuration, unit, SYSTEM_CLOCK, name);
+    }
+
+    /**
+     * @param threadName The name of the wheel thread, or null to start no thread and run the
+     *                   tasks in {@link #advance()} calls only.
+     */
+    TimingWheel(long tickDuration, TimeUnit unit, Clock clock, String threadName) {
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        if (threadName != null) {
+            this.thread = new Thread(this, threadName);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        } else {
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Runs the task on the wheel thread at a fixed rate, starting after the initial delay. The task
+     * must be quick; anything slow belongs on another executor.
+     */
+    Task scheduleAtFixedRate(Runnable runnable, long initialDelay, long period, TimeUnit unit) {
+        long periodNanos = Math.max(unit.toNanos(period), this.tickNanos);
+        Task task = new Task(runnable, periodNanos, now() + unit.toNanos(initialDelay));
+        this.added.offer(task);
+        LockSupport.unpark(this.thread);
+        return task;
+    }
+
+    /**
+     * Runs the task once on the wheel thread after the delay.
+     */
+    Task schedule(Runnable runnable, long delay, TimeUnit unit) {
+        Task task = new Task(runnable, 0, now() + unit.toNanos(delay));
+        this.added.offer(task);
+        LockSupport.unpark(this.thread);
+        return task;
+    }
+
+    /**
+     * @return The delay between the deadlines and the actual start of all task runs, in
+     * nanoseconds.
+     */
+    Histogram getJitter() {
+        return this.jitter;
+    }
+
+    /**
+     * @return The time of the wheel's clock in nanoseconds, comparable to {@link System#nanoTime()}
+     * unless a test drives the wheel.
+     */
+    long nanoTime() {
+        return this.clock.nanoTime();
+    }
+
+    void stop() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            long sleep = advance();
+            if (sleep < 0) {
+                LockSupport.park(this);
+            } else if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    /**
+     * Takes over the newly scheduled tasks and runs all tasks that are due.
+     *
+     * @return The nanoseconds until the next deadline, or -1 if no task is scheduled.
+     */
+    long advance() {
+        if (this.taskCount == 0) {
+            // restart counting ticks from now instead of catching up on the idle period
+            this.tick = Math.max(this.tick, now() / this.tickNanos);
+        }
+        addTasks();
+        if (this.taskCount == 0) {
+            return -1;
+        }
+
+        long currentTick = now() / this.tickNanos;
+        long nextTick;
+        while ((nextTick = nextDeadlineTick()) <= currentTick) {
+            this.tick = nextTick;
+            expire(nextTick);
+            this.tick = nextTick + 1;
+        }
+        // nothing is due up to the current tick
+        this.tick = Math.max(this.tick, currentTick + 1);
+        if (this.taskCount == 0) {
+            return -1;
+        }
+        return Math.max(0, nextTick * this.tickNanos - now());
+    }
+
+    private long now() {
+        return this.clock.nanoTime() - this.startTime;
+    }
+
+    /**
+     * @return The first tick from the current one on that has a task due, which includes
+     * cancelled tasks still to be unlinked. Looks at each slot at most once, since a slot that
+     * has nothing due in this round of the wheel only holds tasks of later rounds.
+     */
+    private long nextDeadlineTick() {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < WHEEL_SIZE; ++i) {
+            long tick = this.tick + i;
+            for (Task task = this.wheel[(int) (tick & WHEEL_MASK)]; task != null; task = task.next) {
+                if (task.deadlineTick <= tick) {
+                    return tick;
+                }
+                earliest = Math.min(earliest, task.deadlineTick);
+            }
+        }
+        return earliest;
+    }
+
+    private void addTasks() {
+        Task task;
+        while ((task = this.added.poll()) != null) {
+            if (!task.cancelled) {
+                insert(task);
+                this.taskCount++;
+            }
+        }
+    }
+
+    private void insert(Task task) {
+        // a deadline inside a tick that has already been processed expires with the current one
+        task.deadlineTick = Math.max(this.tick, (task.deadline + this.tickNanos - 1) / this.tickNanos);
+        link(task);
+    }
+
+    private void link(Task task) {
+        int slot = (int) (task.deadlineTick & WHEEL_MASK);
+        task.next = this.wheel[slot];
+        this.wheel[slot] = task;
+    }
+
+    private void expire(long tick) {
+        int slot = (int) (tick & WHEEL_MASK);
+        Task task = this.wheel[slot];
+        this.wheel[slot] = null;
+        while (task != null) {
+            Task next = task.next;
+            if (!task.cancelled && task.deadlineTick <= tick) {
+                runTask(task);
+            }
+            if (task.cancelled) {
+                this.taskCount--;
+            } else {
+                // either due in a later round of the wheel or rescheduled by its run
+                link(task);
+            }
+            task = next;
+        }
+    }
+
+    private void runTask(Task task) {
+        long start = now();
+        long late = start - task.deadline;
+        this.jitter.record(late);
+        task.record(late);
+        try {
+            task.runnable.run();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Timer task failed", e);
+        }
+        if (task.periodNanos == 0) {
+            task.cancelled = true;
+            return;
+        }
+
+        task.deadline += task.periodNanos;
+        long behind = now() - task.deadline;
+        if (behind >= task.periodNanos) {
+            long missed = behind / task.periodNanos;
+            task.overruns += missed;
+            task.deadline += missed * task.periodNanos;
+        }
+        task.deadlineTick = Math.max(this.tick + 1, (task.deadline + this.tickNanos - 1) / this.tickNanos);
+    }
+
+    /**
+     * The time source of a wheel, {@link System#nanoTime()} unless a test drives the wheel.
+     */
+    interface Clock {
+        long nanoTime();
+    }
+
+    /**
+     * A scheduled task together with its timing statistics. The statistics are written by the
+     * wheel thread only and may be read from any thread.
+     */
+    static final class Task {
+        private final Runnable runnable;
+        private final long periodNanos;
+        private volatile boolean cancelled = false;
+        private long deadline;
+        private long deadlineTick;
+        private Task next;
+
+        private volatile long runs = 0;
+        private volatile long overruns = 0;
+        private volatile long jitterSum = 0;
+        private volatile long maxJitter = 0;
+
+        private Task(Runnable runnable, long periodNanos, long deadline) {
+            this.runnable = runnable;
+            this.periodNanos = periodNanos;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stops the task. A run that has already started completes.
+         */
+        void cancel() {
+            this.cancelled = true;
+        }
+
+        long getRuns() {
+            return this.runs;
+        }
+
+        /**
+         * @return The number of runs skipped because the task fell a whole period behind.
+         */
+        long getOverruns() {
+            return this.overruns;
+        }
+
+        long getMeanJitterNanos() {
+            long runs = this.runs;
+            return (runs == 0) ? 0 : this.jitterSum / runs;
+        }
+
+        long getMaxJitterNanos() {
+            return this.maxJitter;
+        }
+
+        private void record(long late) {
+            this.runs++;
+            this.jitterSum += late;
+            if (late > this.maxJitter) {
+                this.maxJitter = late;
+            }
+        }
+    }
+}
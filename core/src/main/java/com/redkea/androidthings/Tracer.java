@@ -0,0 +1,175 @@
+package com.redkea.androidthings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Sampled end-to-end traces of received commands.
+ * <p>
+ * Every n-th command that reaches the dispatcher gets stamped with {@link System#nanoTime()} at
+ * each stage it passes: socket read, decode, dispatch, receiver queue, start and end of the
+ * receive function and the completed GPIO or PWM write. When the command is recycled, its stamps
+ * go into a fixed-size ring that keeps the latest {@link #CAPACITY} traces. Stages a command
+ * never passed stay 0, e.g. pin writes have no receiver stages and frames dropped by an
+ * {@link InboundPolicy} end at the queue.
+ * <p>
+ * Committing a trace claims a slot with one atomic increment and never locks, so traced commands
+ * cost a few stores on the thread that recycles them and untraced ones a null check per stage.
+ */
+class Tracer {
+    static final int STAGE_READ = 0;
+    static final int STAGE_DECODED = 1;
+    static final int STAGE_DISPATCHED = 2;
+    static final int STAGE_QUEUED = 3;
+    static final int STAGE_CALLBACK_START = 4;
+    static final int STAGE_CALLBACK_END = 5;
+    static final int STAGE_WRITTEN = 6;
+    static final int STAGES = 7;
+
+    /** The first bytes of a dump file. */
+    static final int MAGIC = 0x524b5452;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int CAPACITY = 4096;
+    // per record: sequence number, command type code, stamps
+    private static final int RECORD_LONGS = 2 + STAGES;
+
+    private final AtomicLongArray records = new AtomicLongArray(CAPACITY * RECORD_LONGS);
+    private final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong committed = new AtomicLong();
+    private volatile int sampleEvery = 0;
+    // guarded by this, the reactor threads sample concurrently
+    private int untilNextSample = 0;
+    private int random = 0x2545F491;
+
+    /**
+     * Traces every n-th command from now on, or none if n is 0.
+     */
+    void setSampleEvery(int n) {
+        this.sampleEvery = Math.max(0, n);
+    }
+
+    /**
+     * Decides whether the freshly decoded command is traced. Only locks while tracing is on.
+     *
+     * @return Whether the command has been marked for tracing.
+     */
+    boolean sample(Command command) {
+        int n = this.sampleEvery;
+        if (n == 0) {
+            return false;
+        }
+        return sample(command, n);
+    }
+
+    private synchronized boolean sample(Command command, int n) {
+        if (--this.untilNextSample > 0) {
+            return false;
+        }
+        // a random gap averaging n, so sampling does not lock onto a periodic mix of commands
+        this.random ^= this.random << 13;
+        this.random ^= this.random >>> 17;
+        this.random ^= this.random << 5;
+        this.untilNextSample = 1 + (this.random & Integer.MAX_VALUE) % (2 * n);
+        command.tracer = this;
+        return true;
+    }
+
+    /**
+     * Copies the stamps of a traced command into the ring.
+     */
+    void commit(Command command) {
+        long sequence = this.committed.getAndIncrement();
+        int slot = (int) (sequence % CAPACITY);
+        int base = slot * RECORD_LONGS;
+        // readers skip records whose sequence number is negative or changes while they read
+        this.records.set(base, -1);
+        this.records.set(base + 1, command.getCommandType().getCode() & 0xFF);
+        for (int i = 0; i < STAGES; ++i) {
+            this.records.set(base + 2 + i, command.traceStamps[i]);
+        }
+        String key = "";
+        if (command.getParamCount() > 0 && command.getParamType(0) == Command.TYPE_STRING) {
+            key = command.getString(0);
+        }
+        this.keys.set(slot, key);
+        this.records.set(base, sequence);
+    }
+
+    /**
+     * Writes the traces in the ring to the file, oldest first.
+     * <p>
+     * The format is big endian: the int {@link #MAGIC}, the int {@link #FORMAT_VERSION}, the int
+     * number of stages and the int number of records, followed by the records. Each record is the
+     * command type code as a byte, the receiver key or pin name in modified UTF-8 as written by
+     * {@link DataOutputStream#writeUTF(String)} and one long nanosecond stamp per stage.
+     *
+     * @return The number of records written.
+     */
+    int dump(File file) throws IOException {
+        long end = this.committed.get();
+        long start = Math.max(0, end - CAPACITY);
+        int count = 0;
+        byte[] types = new byte[CAPACITY];
+        String[] names = new String[CAPACITY];
+        long[] stamps = new long[CAPACITY * STAGES];
+        for (long sequence = start; sequence < end; ++sequence) {
+            int base = (int) (sequence % CAPACITY) * RECORD_LONGS;
+            if (this.records.get(base) != sequence) {
+                continue;
+            }
+            types[count] = (byte) this.records.get(base + 1);
+            names[count] = this.keys.get((int) (sequence % CAPACITY));
+            for (int i = 0; i < STAGES; ++i) {
+                stamps[count * STAGES + i] = this.records.get(base + 2 + i);
+            }
+            if (this.records.get(base) == sequence) {
+                count++;
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(STAGES);
+            out.writeInt(count);
+            for (int i = 0; i < count; ++i) {
+                out.writeByte(types[i]);
+                out.writeUTF(names[i]);
+                for (int stage = 0; stage < STAGES; ++stage) {
+                    out.writeLong(stamps[i * STAGES + stage]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,90 @@
+package com.redkea.androidthings;
+
+import java.nio.ByteBuffer;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Allocation-free UTF-8 encoding of strings into byte buffers.
+ */
+final class Utf8 {
+
+    private Utf8() {
+        /* do nothing - hiding constructor */
+    }
+
+    /**
+     * @return The number of bytes the UTF-8 encoding of the given string takes.
+     */
+    static int encodedLength(CharSequence s) {
+        int length = 0;
+        int n = s.length();
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates become '?', as with String.getBytes()
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the given string at the given absolute offset, leaving the buffer's position alone.
+     * The buffer needs room for {@link #encodedLength(CharSequence)} bytes.
+     *
+     * @return The offset behind the last written byte.
+     */
+    static int encode(CharSequence s, ByteBuffer out, int offset) {
+        int n = s.length();
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put(offset++, (byte) c);
+            } else if (c < 0x800) {
+                out.put(offset++, (byte) (0xC0 | (c >> 6)));
+                out.put(offset++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put(offset++, (byte) (0xF0 | (codePoint >> 18)));
+                out.put(offset++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put(offset++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put(offset++, (byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                out.put(offset++, (byte) '?');
+            } else {
+                out.put(offset++, (byte) (0xE0 | (c >> 12)));
+                out.put(offset++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put(offset++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,104 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class CommandQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int PER_PRODUCER = 10000;
+
+    private final CommandQueue queue = new CommandQueue();
+
+    @Test
+    public void drainsInOfferOrder() {
+        for (short i = 0; i < 5; ++i) {
+            this.queue.offer(command((short) 0, i));
+        }
+        Command command = this.queue.drain();
+        for (short i = 0; i < 5; ++i) {
+            assertEquals(i, command.getInt16(1));
+            Command next = command.next;
+            command.recycle();
+            command = next;
+        }
+        assertNull(command);
+        assertTrue(this.queue.isEmpty());
+        assertNull(this.queue.drain());
+    }
+
+    @Test
+    public void keepsTheOrderOfEveryProducerWhileDrainingConcurrently() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; ++p) {
+            final short producer = (short) p;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < PER_PRODUCER; ++i) {
+                        queue.offer(command(producer, (short) i));
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        int[] expected = new int[PRODUCERS];
+        int received = 0;
+        start.countDown();
+        while (received < PRODUCERS * PER_PRODUCER) {
+            Command command = this.queue.drain();
+            while (command != null) {
+                int producer = command.getInt16(0);
+                assertEquals(expected[producer], command.getInt16(1));
+                expected[producer]++;
+                received++;
+                Command next = command.next;
+                command.recycle();
+                command = next;
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(this.queue.isEmpty());
+    }
+
+    private static Command command(short producer, short sequence) {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addInt16(producer);
+        command.addInt16(sequence);
+        return command;
+    }
+}
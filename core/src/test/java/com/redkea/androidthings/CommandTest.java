@@ -0,0 +1,68 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class CommandTest {
+
+    @Test
+    public void encodesParametersUpToTheFrameLimit() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addBytes(new byte[Command.MAX_PARAM_SIZE - 3], 0, Command.MAX_PARAM_SIZE - 3);
+        assertEquals(Command.HEADER_SIZE + Command.MAX_PARAM_SIZE, command.getFrameSize());
+        Frame frame = Frame.encode(command);
+        assertEquals(Command.MAX_PARAM_SIZE, frame.view(1).getShort() & 0xFFFF);
+        frame.release();
+        command.recycle();
+    }
+
+    @Test
+    public void rejectsParametersPastTheFrameLimit() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString("widget");
+        char[] text = new char[Command.MAX_PARAM_SIZE];
+        Arrays.fill(text, 'a');
+        try {
+            command.addString(new String(text));
+            fail("Oversized string accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            command.addBytes(Command.MAX_PARAM_SIZE);
+            fail("Oversized bytes accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        // the rejected parameters left the command as it was
+        assertEquals(1, command.getParamCount());
+        assertEquals(Command.HEADER_SIZE + 3 + "widget".length(), command.getFrameSize());
+        command.recycle();
+    }
+}
@@ -0,0 +1,137 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class CompactCodecTest {
+
+    @Test
+    public void roundTripsEveryParameterTypeInBothVersions() throws IOException {
+        for (int version : new int[]{Command.VERSION_1, Command.VERSION_2}) {
+            Command command = decode(FrameDecoderTest.encode(sampleCommand(), version), version);
+            assertEquals(CommandType.DATA_SEND, command.getCommandType());
+            assertEquals(8, command.getParamCount());
+            assertEquals("widget", command.getString(0));
+            assertEquals(-7, command.getInt8(1));
+            assertEquals(-12345, command.getInt16(2));
+            assertEquals(true, command.getBool(3));
+            assertEquals(false, command.getBool(4));
+            assertEquals(3.25f, command.getFloat(5), 0);
+            assertEquals("\u00e4\u00f6\u00fc", command.getString(6));
+            assertArrayEquals(new byte[]{1, 2, 3, (byte) 0xFF}, command.getBytes(7));
+            command.recycle();
+        }
+    }
+
+    @Test
+    public void encodesSmallerThanVersion1() {
+        byte[] v1 = FrameDecoderTest.encode(sampleCommand(), Command.VERSION_1);
+        byte[] v2 = FrameDecoderTest.encode(sampleCommand(), Command.VERSION_2);
+        assertTrue(v2.length + " >= " + v1.length, v2.length < v1.length);
+
+        Command command = sampleCommand();
+        assertEquals(v2.length, command.getFrameSize(Command.VERSION_2));
+        assertEquals(v2.length, CompactCodec.getFrameSize(command));
+        command.recycle();
+    }
+
+    @Test
+    public void peeksTheFrameSizeOnceTheHeaderIsComplete() throws IOException {
+        byte[] bytes = FrameDecoderTest.encode(largeCommand(), Command.VERSION_2);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // a payload above 127 bytes needs a second length byte
+        buffer.limit(2);
+        assertEquals(-1, CompactCodec.peekFrameSize(buffer, 0));
+        buffer.limit(3);
+        assertEquals(bytes.length, CompactCodec.peekFrameSize(buffer, 0));
+
+        Command command = decode(bytes, Command.VERSION_2);
+        assertEquals(1000, command.getBytes(1).length);
+        command.recycle();
+    }
+
+    @Test
+    public void rejectsMalformedFrames() {
+        // a payload length above the limit
+        expectMalformed(new byte[]{0, (byte) 0x80, (byte) 0x80, 0x04});
+        // a length varint that does not end
+        expectMalformed(new byte[]{0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0});
+        // an unknown parameter tag
+        byte[] frame = FrameDecoderTest.encode(sampleCommand(), Command.VERSION_2);
+        int schema = 3;
+        frame[schema] = (byte) 0x0F;
+        expectMalformed(frame);
+    }
+
+    private static Command sampleCommand() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString("widget");
+        command.addInt8((byte) -7);
+        command.addInt16((short) -12345);
+        command.addBool(true);
+        command.addBool(false);
+        command.addFloat(3.25f);
+        command.addString("\u00e4\u00f6\u00fc");
+        command.addBytes(new byte[]{1, 2, 3, (byte) 0xFF}, 0, 4);
+        return command;
+    }
+
+    private static Command largeCommand() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString("chart");
+        byte[] bytes = new byte[1000];
+        Arrays.fill(bytes, (byte) 0x5A);
+        command.addBytes(bytes, 0, bytes.length);
+        return command;
+    }
+
+    private static Command decode(byte[] bytes, int version) throws IOException {
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setVersion(version);
+        decoder.append(bytes, 0, bytes.length);
+        Command command = decoder.nextFrame();
+        assertEquals(null, decoder.nextFrame());
+        decoder.release();
+        return command;
+    }
+
+    private static void expectMalformed(byte[] bytes) {
+        try {
+            Command command = decode(bytes, Command.VERSION_2);
+            command.recycle();
+            fail("Malformed frame accepted: " + Arrays.toString(bytes));
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class ConcurrentPoolTest {
+
+    @Test
+    public void reusesReleasedInstancesOnTheSameThread() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(4, 16);
+        assertNull(pool.acquire());
+        Object instance = new Object();
+        assertTrue(pool.release(instance));
+        assertSame(instance, pool.acquire());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void handsInstancesOverBetweenThreads() throws InterruptedException {
+        final Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(2, 16);
+        final Object[] released = {new Object(), new Object(), new Object(), new Object()};
+        runOnNewThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Object instance : released) {
+                    pool.release(instance);
+                }
+            }
+        });
+        // the cache of the ended thread was handed back, so every instance is available
+        Set<Object> acquired = new HashSet<>();
+        Object instance;
+        while ((instance = pool.acquire()) != null) {
+            acquired.add(instance);
+        }
+        assertEquals(released.length, acquired.size());
+    }
+
+    @Test
+    public void keepsTheCountersOfEndedThreads() throws InterruptedException {
+        final Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(2, 16);
+        for (int i = 0; i < 3; ++i) {
+            runOnNewThread(new Runnable() {
+                @Override
+                public void run() {
+                    pool.acquire();
+                }
+            });
+        }
+        assertEquals(3, pool.getMissCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void detectsDoubleReleaseInDebugMode() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(4, 16, true);
+        Object instance = new Object();
+        pool.release(instance);
+        pool.release(instance);
+    }
+
+    private static void runOnNewThread(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+}
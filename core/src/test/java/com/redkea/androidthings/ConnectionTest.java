@@ -0,0 +1,91 @@
+package com.redkea.androidthings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class ConnectionTest {
+    private static final long MS = 1000000L;
+
+    private Selector selector;
+    private SocketChannel channel;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        this.selector = Selector.open();
+        this.channel = SocketChannel.open();
+        this.channel.configureBlocking(false);
+        this.connection = new Connection(0, this.channel, this.selector, new Metrics());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.channel.close();
+        this.selector.close();
+    }
+
+    @Test
+    public void startsFromTheFirstSample() {
+        assertEquals(-1, this.connection.getSmoothedRtt());
+        short sequence = this.connection.nextPing(1000 * MS);
+        assertEquals(40 * MS, this.connection.onPong(sequence, 1040 * MS));
+        assertEquals(40 * MS, this.connection.getSmoothedRtt());
+        assertEquals(20 * MS, this.connection.getRttVariance());
+    }
+
+    @Test
+    public void smoothesLaterSamples() {
+        ping(1000 * MS, 40 * MS);
+        // srtt = 7/8 srtt + 1/8 sample, rttvar = 3/4 rttvar + 1/4 |srtt - sample|
+        ping(2000 * MS, 80 * MS);
+        assertEquals(45 * MS, this.connection.getSmoothedRtt());
+        assertEquals(25 * MS, this.connection.getRttVariance());
+        ping(3000 * MS, 45 * MS);
+        assertEquals(45 * MS, this.connection.getSmoothedRtt());
+        assertEquals(18750000L, this.connection.getRttVariance());
+    }
+
+    @Test
+    public void ignoresPongsToSupersededPings() {
+        short first = this.connection.nextPing(1000 * MS);
+        short second = this.connection.nextPing(2000 * MS);
+        assertEquals(-1, this.connection.onPong(first, 2010 * MS));
+        assertEquals(-1, this.connection.getSmoothedRtt());
+        assertEquals(30 * MS, this.connection.onPong(second, 2030 * MS));
+        // a second PONG to the same PING is no sample either
+        assertEquals(-1, this.connection.onPong(second, 2050 * MS));
+        assertEquals(30 * MS, this.connection.getSmoothedRtt());
+    }
+
+    private void ping(long sentAt, long rtt) {
+        short sequence = this.connection.nextPing(sentAt);
+        assertEquals(rtt, this.connection.onPong(sequence, sentAt + rtt));
+    }
+}
@@ -0,0 +1,211 @@
+package com.redkea.androidthings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class EdgeInputTest {
+    private static final long MS = 1000000L;
+    private static final String PIN = "BCM5";
+
+    private final TimingWheelTest.ManualClock clock = new TimingWheelTest.ManualClock();
+    private final TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, this.clock, null);
+    private final SimulatedBackend backend = new SimulatedBackend();
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private Selector selector;
+    private CapturingNetwork network;
+    private Thread networkThread;
+    private Timers timers;
+
+    @Before
+    public void setUp() throws IOException {
+        this.selector = Selector.open();
+        this.network = new CapturingNetwork();
+        // only run to be stopped again, which closes its sockets
+        this.networkThread = new Thread(this.network, "redkeaNetwork");
+        this.networkThread.start();
+        this.timers = new Timers(this.network, new PeripheralRegistry(this.backend), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, this.wheel);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        this.timers.shutdown();
+        this.networkThread.interrupt();
+        this.networkThread.join();
+        for (SocketChannel channel : this.channels) {
+            channel.close();
+        }
+        this.selector.close();
+    }
+
+    @Test
+    public void sendsTheCurrentLevelToEveryNewSubscriber() throws IOException {
+        this.timers.setInputPolicy(DigitalInputPolicy.onChange(0, 0));
+        this.backend.setValue(PIN, true);
+        Connection first = subscribe();
+        advanceTo(0);
+        assertSent(true, first);
+
+        Connection second = subscribe();
+        advanceTo(1);
+        assertSent(true, second);
+        // nothing else happens while the level stays the same
+        advanceTo(1000);
+        assertEquals(0, this.network.sent.size());
+    }
+
+    @Test
+    public void sendsOnlyChanges() throws IOException {
+        this.timers.setInputPolicy(DigitalInputPolicy.onChange(0, 0));
+        Connection connection = subscribe();
+        advanceTo(0);
+        assertSent(false, connection);
+
+        this.backend.injectEdge(PIN, true, this.clock.now);
+        assertSent(true, connection);
+        // an edge that ends on the level already sent, like a short pulse read back late
+        this.backend.injectEdge(PIN, true, this.clock.now);
+        assertEquals(0, this.network.sent.size());
+        this.backend.injectEdge(PIN, false, this.clock.now);
+        assertSent(false, connection);
+    }
+
+    @Test
+    public void waitsUntilTheLevelIsStableForTheDebounceWindow() throws IOException {
+        this.timers.setInputPolicy(DigitalInputPolicy.onChange(20, 0));
+        Connection connection = subscribe();
+        advanceTo(0);
+        assertSent(false, connection);
+
+        // a bouncing contact that settles high 8 ms after the first edge
+        edgeAt(1, true);
+        edgeAt(5, false);
+        edgeAt(9, true);
+        advanceTo(21);
+        assertEquals(0, this.network.sent.size());
+        advanceTo(28);
+        assertEquals(0, this.network.sent.size());
+        advanceTo(29);
+        assertSent(true, connection);
+
+        // bouncing that settles on the level already sent sends nothing
+        edgeAt(40, false);
+        edgeAt(42, true);
+        advanceTo(100);
+        assertEquals(0, this.network.sent.size());
+    }
+
+    @Test
+    public void resendsTheLevelAtTheHeartbeatInterval() throws IOException {
+        this.timers.setInputPolicy(DigitalInputPolicy.onChange(0, 50));
+        Connection connection = subscribe();
+        advanceTo(0);
+        assertSent(false, connection);
+
+        advanceTo(49);
+        assertEquals(0, this.network.sent.size());
+        // the level is sent again although it did not change
+        advanceTo(50);
+        assertSent(false, connection);
+        this.backend.injectEdge(PIN, true, this.clock.now);
+        assertSent(true, connection);
+        advanceTo(100);
+        assertSent(true, connection);
+    }
+
+    private Connection subscribe() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        this.channels.add(channel);
+        Connection connection = new Connection(this.channels.size(), channel, this.selector, new Metrics());
+
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.SETUP_TIMERS);
+        command.addInt16((short) 1);
+        command.addInt8(CommandType.READ_FROM_DIGITAL_PIN.getCode());
+        command.addString(PIN);
+        command.addString("led");
+        command.addInt16((short) 100);
+        command.source = connection;
+        this.timers.setup(command);
+        command.recycle();
+        return connection;
+    }
+
+    private void edgeAt(long millis, boolean value) {
+        advanceTo(millis);
+        this.backend.injectEdge(PIN, value, this.clock.now);
+    }
+
+    private void advanceTo(long millis) {
+        this.clock.now = millis * MS;
+        this.wheel.advance();
+    }
+
+    /**
+     * Checks that exactly one DATA_SEND frame with the level went out, to the given connection
+     * only.
+     */
+    private void assertSent(boolean value, Connection target) {
+        assertEquals(1, this.network.sent.size());
+        Command command = this.network.sent.remove(0);
+        assertEquals(CommandType.DATA_SEND, command.getCommandType());
+        assertEquals("led", command.getString(0));
+        assertEquals(value, command.getBool(1));
+        assertEquals(1, command.targets.size());
+        assertTrue(command.targets.contains(target));
+        command.recycle();
+    }
+
+    /**
+     * Keeps the commands instead of sending them.
+     */
+    static final class CapturingNetwork extends Network {
+        final List<Command> sent = new ArrayList<>();
+
+        CapturingNetwork() throws IOException {
+            super(null, null, new Metrics(), 1, 0);
+        }
+
+        @Override
+        void sendCommand(Command command) {
+            this.sent.add(command);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.redkea.androidthings;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class FrameDecoderTest {
+    private final FrameDecoder decoder = new FrameDecoder();
+
+    @After
+    public void tearDown() {
+        this.decoder.release();
+    }
+
+    @Test
+    public void decodesFrameDeliveredOneByteAtATime() throws IOException {
+        byte[] bytes = encode(textCommand("onSlide", "hello"), Command.VERSION_1);
+        ChunkedChannel channel = new ChunkedChannel(bytes, 1);
+        for (int i = 0; i < bytes.length - 1; ++i) {
+            this.decoder.readFrom(channel);
+            assertNull(this.decoder.nextFrame());
+        }
+        this.decoder.readFrom(channel);
+        Command command = this.decoder.nextFrame();
+        assertEquals(CommandType.WRITE_TO_FUNCTION, command.getCommandType());
+        assertEquals("onSlide", command.getString(0));
+        assertEquals("hello", command.getString(1));
+        assertEquals(bytes.length, this.decoder.getLastFrameSize());
+        command.recycle();
+        assertNull(this.decoder.nextFrame());
+    }
+
+    @Test
+    public void decodesSeveralFramesFromOneRead() throws IOException {
+        byte[] first = encode(textCommand("a", "1"), Command.VERSION_1);
+        byte[] second = encode(textCommand("b", "2"), Command.VERSION_1);
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        this.decoder.readFrom(new ChunkedChannel(both, both.length));
+
+        Command command = this.decoder.nextFrame();
+        assertEquals("a", command.getString(0));
+        command.recycle();
+        command = this.decoder.nextFrame();
+        assertEquals("b", command.getString(0));
+        command.recycle();
+        assertNull(this.decoder.nextFrame());
+    }
+
+    @Test
+    public void keepsFrameSplitAcrossReadsInBothVersions() throws IOException {
+        for (int version = Command.VERSION_1; version <= Command.VERSION_2; ++version) {
+            FrameDecoder decoder = new FrameDecoder();
+            decoder.setVersion(version);
+            byte[] bytes = encode(textCommand("onText", "x"), version);
+            // the header and part of the payload first, the rest later
+            ChunkedChannel channel = new ChunkedChannel(bytes, bytes.length - 2);
+            decoder.readFrom(channel);
+            assertNull(decoder.nextFrame());
+            decoder.readFrom(channel);
+            Command command = decoder.nextFrame();
+            assertEquals("x", command.getString(1));
+            command.recycle();
+            decoder.release();
+        }
+    }
+
+    @Test
+    public void growsForFramesLargerThanTheReadBuffer() throws IOException {
+        char[] text = new char[10000];
+        Arrays.fill(text, 'z');
+        byte[] bytes = encode(textCommand("onText", new String(text)), Command.VERSION_1);
+        ChunkedChannel channel = new ChunkedChannel(bytes, 1500);
+        Command command = null;
+        while (command == null) {
+            this.decoder.readFrom(channel);
+            command = this.decoder.nextFrame();
+        }
+        assertEquals(new String(text), command.getString(1));
+        command.recycle();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenThePeerClosesTheChannel() throws IOException {
+        this.decoder.readFrom(new ChunkedChannel(new byte[0], 1));
+    }
+
+    static Command textCommand(String key, String text) {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.WRITE_TO_FUNCTION);
+        command.addString(key);
+        command.addString(text);
+        return command;
+    }
+
+    /**
+     * @return The frame of the command in the given version. Recycles the command.
+     */
+    static byte[] encode(Command command, int version) {
+        Frame frame = Frame.encode(command, version);
+        command.recycle();
+        ByteBuffer view = frame.view(0);
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        frame.release();
+        return bytes;
+    }
+
+    /**
+     * Hands out the given bytes in reads of at most the given size, then reports end of stream.
+     */
+    private static final class ChunkedChannel implements ReadableByteChannel {
+        private final byte[] bytes;
+        private final int chunkSize;
+        private int position = 0;
+
+        ChunkedChannel(byte[] bytes, int chunkSize) {
+            this.bytes = bytes;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (this.position == this.bytes.length) {
+                return -1;
+            }
+            int length = Math.min(Math.min(this.chunkSize, dst.remaining()), this.bytes.length - this.position);
+            dst.put(this.bytes, this.position, length);
+            this.position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.redkea.androidthings;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class FrameDeflaterTest {
+    private final FrameDeflater deflater = new FrameDeflater();
+    private final FrameInflater inflater = new FrameInflater();
+    private final OutboundBuffer outbound = new OutboundBuffer();
+    private int compressedFrames = 0;
+
+    @After
+    public void tearDown() {
+        this.deflater.end();
+        this.inflater.end();
+        this.outbound.release();
+    }
+
+    @Test
+    public void restoresTheFramesOfEveryBatch() throws IOException {
+        for (int version : new int[]{Command.VERSION_1, Command.VERSION_2}) {
+            FrameDeflater deflater = new FrameDeflater();
+            FrameInflater inflater = new FrameInflater();
+            inflater.setVersion(version);
+            List<byte[]> sent = new ArrayList<>();
+            List<byte[]> received = new ArrayList<>();
+            for (int batch = 0; batch < 5; ++batch) {
+                for (int i = 0; i < 20; ++i) {
+                    byte[] frame = FrameDecoderTest.encode(FrameDecoderTest.textCommand("onTemperature",
+                            "value " + (batch * 20 + i)), version);
+                    sent.add(frame);
+                    append(deflater, frame, version);
+                }
+                deflater.flush(this.outbound, version);
+                received.addAll(receive(inflater, version));
+            }
+            assertEquals(sent.size(), received.size());
+            for (int i = 0; i < sent.size(); ++i) {
+                assertArrayEquals(sent.get(i), received.get(i));
+            }
+            assertTrue(deflater.getBytesOut() * 3 < deflater.getBytesIn());
+            deflater.end();
+            inflater.end();
+        }
+        assertTrue(this.compressedFrames > 0);
+    }
+
+    @Test
+    public void sendsSmallBatchesAsTheyAre() throws IOException {
+        byte[] frame = FrameDecoderTest.encode(FrameDecoderTest.textCommand("a", "1"), Command.VERSION_1);
+        append(this.deflater, frame, Command.VERSION_1);
+        this.deflater.flush(this.outbound, Command.VERSION_1);
+        List<byte[]> received = receive(this.inflater, Command.VERSION_1);
+        assertEquals(1, received.size());
+        assertArrayEquals(frame, received.get(0));
+        assertEquals(0, this.compressedFrames);
+        assertEquals(frame.length, this.deflater.getBytesOut());
+    }
+
+    @Test
+    public void suspendsCompressionOfIncompressibleData() throws IOException {
+        Random random = new Random(42);
+        int lastCompressed = -1;
+        for (int batch = 0; batch < 30; ++batch) {
+            byte[] noise = new byte[512];
+            random.nextBytes(noise);
+            Command command = Command.obtain();
+            command.setCommandType(CommandType.DATA_SEND);
+            command.addString("noise");
+            command.addBytes(noise, 0, noise.length);
+            byte[] frame = FrameDecoderTest.encode(command, Command.VERSION_1);
+            append(this.deflater, frame, Command.VERSION_1);
+            this.deflater.flush(this.outbound, Command.VERSION_1);
+            int compressed = this.compressedFrames;
+            List<byte[]> received = receive(this.inflater, Command.VERSION_1);
+            assertArrayEquals(frame, received.get(0));
+            if (this.compressedFrames > compressed) {
+                lastCompressed = batch;
+            }
+        }
+        // a few batches are compressed until the ratio average shows the loss, then none
+        assertTrue(lastCompressed >= 0);
+        assertTrue("batch " + lastCompressed + " still compressed", lastCompressed < 15);
+    }
+
+    @Test
+    public void rejectsMalformedCompressedData() {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.COMPRESSED);
+        command.addBytes(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, 0, 4);
+        try {
+            this.inflater.inflate(command);
+            fail("Malformed data inflated");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            command.recycle();
+        }
+    }
+
+    private void append(FrameDeflater deflater, byte[] bytes, int version) throws IOException {
+        Frame frame = Frame.copyOf(bytes, 0, bytes.length);
+        try {
+            deflater.append(frame, this.outbound, version);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Writes out the queued bytes and decodes them like the peer does.
+     */
+    private List<byte[]> receive(FrameInflater inflater, int version) throws IOException {
+        OutboundBufferTest.LimitedChannel channel = new OutboundBufferTest.LimitedChannel(Integer.MAX_VALUE);
+        this.outbound.writeTo(channel);
+        assertTrue(this.outbound.isEmpty());
+        byte[] bytes = channel.written.toByteArray();
+
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.setVersion(version);
+        decoder.append(bytes, 0, bytes.length);
+        List<byte[]> frames = new ArrayList<>();
+        Command command;
+        while ((command = decoder.nextFrame()) != null) {
+            if (command.getCommandType() == CommandType.COMPRESSED) {
+                this.compressedFrames++;
+                inflater.inflate(command);
+                command.recycle();
+                Command inflated;
+                while ((inflated = inflater.nextFrame()) != null) {
+                    frames.add(FrameDecoderTest.encode(inflated, version));
+                }
+            } else {
+                frames.add(FrameDecoderTest.encode(command, version));
+            }
+        }
+        decoder.release();
+        return frames;
+    }
+}
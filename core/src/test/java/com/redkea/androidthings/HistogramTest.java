@@ -0,0 +1,87 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class HistogramTest {
+    private final Histogram histogram = new Histogram();
+
+    @Test
+    public void reportsZeroWhenEmpty() {
+        assertEquals(0, this.histogram.getValueAtPercentile(50));
+        assertEquals(0, this.histogram.getCount());
+        assertEquals(0, this.histogram.getMean(), 0);
+    }
+
+    @Test
+    public void countsSmallValuesExactly() {
+        for (int value = 1; value <= 10; ++value) {
+            this.histogram.record(value);
+        }
+        assertEquals(1, this.histogram.getValueAtPercentile(10));
+        assertEquals(5, this.histogram.getValueAtPercentile(50));
+        assertEquals(9, this.histogram.getValueAtPercentile(90));
+        assertEquals(10, this.histogram.getValueAtPercentile(100));
+        assertEquals(5.5, this.histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void keepsPercentilesOfLargeValuesWithinThreePercent() {
+        for (long value = 1; value <= 1000000; ++value) {
+            this.histogram.record(value * 1000);
+        }
+        double[] percentiles = {1, 25, 50, 90, 99, 99.9};
+        for (double percentile : percentiles) {
+            double exact = percentile * 10000 * 1000;
+            long reported = this.histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + reported, reported >= exact);
+            assertTrue(percentile + ": " + reported, reported <= exact * 1.032);
+        }
+        assertEquals(1000000000L, this.histogram.getValueAtPercentile(100));
+        assertEquals(1000000000L, this.histogram.getMax());
+    }
+
+    @Test
+    public void clampsNegativeValuesToZero() {
+        this.histogram.record(-5);
+        assertEquals(0, this.histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void mergesAndResets() {
+        Histogram other = new Histogram();
+        this.histogram.record(10);
+        other.record(20);
+        other.record(3000);
+        this.histogram.add(other);
+        assertEquals(3, this.histogram.getCount());
+        assertEquals(3000, this.histogram.getMax());
+        assertEquals(20, this.histogram.getValueAtPercentile(50));
+
+        this.histogram.reset();
+        assertEquals(0, this.histogram.getCount());
+        assertEquals(0, this.histogram.getMax());
+    }
+}
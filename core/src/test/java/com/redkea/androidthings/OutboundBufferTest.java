@@ -0,0 +1,202 @@
+package com.redkea.androidthings;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class OutboundBufferTest {
+    private final OutboundBuffer buffer = new OutboundBuffer();
+
+    @After
+    public void tearDown() {
+        this.buffer.release();
+    }
+
+    @Test
+    public void resumesPartialWritesWithoutTruncatingFrames() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; ++i) {
+            expected.write(append("frame-" + i));
+        }
+        LimitedChannel channel = new LimitedChannel(5);
+        int calls = 0;
+        while (!this.buffer.isEmpty()) {
+            this.buffer.writeTo(channel);
+            channel.allow(5);
+            calls++;
+        }
+        assertTrue(calls > 1);
+        assertEquals(0, this.buffer.size());
+        assertArrayEquals(expected.toByteArray(), channel.written.toByteArray());
+    }
+
+    @Test
+    public void stopsWhenTheSocketBufferIsFull() throws IOException {
+        byte[] bytes = append("frame");
+        LimitedChannel channel = new LimitedChannel(0);
+        assertEquals(0, this.buffer.writeTo(channel));
+        assertEquals(bytes.length, this.buffer.size());
+        channel.allow(Integer.MAX_VALUE);
+        assertEquals(bytes.length, this.buffer.writeTo(channel));
+        assertTrue(this.buffer.isEmpty());
+    }
+
+    @Test
+    public void gathersSeveralFramesIntoOneWrite() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; ++i) {
+            expected.write(append("f" + i));
+        }
+        LimitedChannel channel = new LimitedChannel(Integer.MAX_VALUE);
+        assertEquals(expected.size(), this.buffer.writeTo(channel));
+        // 16 frames per gathering write, then the remaining 4
+        assertEquals(2, channel.gathered.size());
+        assertEquals(16, (int) channel.gathered.get(0));
+        assertEquals(4, (int) channel.gathered.get(1));
+        assertArrayEquals(expected.toByteArray(), channel.written.toByteArray());
+    }
+
+    @Test
+    public void rejectsOutputOfAPeerThatDoesNotRead() {
+        char[] text = new char[60000];
+        try {
+            for (int i = 0; i < 100; ++i) {
+                append(new String(text));
+            }
+            fail("Overflow not detected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sharesOneEncodedFrameBetweenConnections() throws IOException {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString("broadcast");
+        Frame frame = Frame.encode(command);
+        command.recycle();
+        ByteBuffer view = frame.view(0);
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+
+        OutboundBuffer[] buffers = {new OutboundBuffer(), new OutboundBuffer(), new OutboundBuffer()};
+        for (OutboundBuffer buffer : buffers) {
+            buffer.append(frame);
+        }
+        frame.release();
+        assertEquals(3, frame.getRefCount());
+
+        // every connection writes the same bytes and gives its reference back once written
+        for (int i = 0; i < 2; ++i) {
+            LimitedChannel channel = new LimitedChannel(Integer.MAX_VALUE);
+            buffers[i].writeTo(channel);
+            assertArrayEquals(bytes, channel.written.toByteArray());
+            assertEquals(2 - i, frame.getRefCount());
+        }
+        // a connection closed before writing gives it back as well
+        buffers[2].release();
+        assertEquals(0, frame.getRefCount());
+    }
+
+    /**
+     * Queues a DATA_SEND frame with the given text.
+     *
+     * @return The bytes of the frame.
+     */
+    private byte[] append(String text) throws IOException {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.DATA_SEND);
+        command.addString(text);
+        Frame frame = Frame.encode(command);
+        command.recycle();
+        this.buffer.append(frame);
+        ByteBuffer view = frame.view(0);
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        frame.release();
+        return bytes;
+    }
+
+    /**
+     * Accepts a limited number of bytes, like a socket with a full send buffer.
+     */
+    static final class LimitedChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final List<Integer> gathered = new ArrayList<>();
+        private int allowance;
+
+        LimitedChannel(int allowance) {
+            this.allowance = allowance;
+        }
+
+        void allow(int bytes) {
+            this.allowance = bytes;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            this.gathered.add(length);
+            long total = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                total += write(srcs[i]);
+            }
+            return total;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = Math.min(this.allowance, src.remaining());
+            for (int i = 0; i < length; ++i) {
+                this.written.write(src.get());
+            }
+            this.allowance -= length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
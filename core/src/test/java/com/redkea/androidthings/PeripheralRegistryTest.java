@@ -0,0 +1,170 @@
+package com.redkea.androidthings;
+
+import com.redkea.androidthings.PeripheralBackend.EdgeListener;
+import com.redkea.androidthings.PeripheralBackend.GpioPin;
+import com.redkea.androidthings.PeripheralBackend.PwmPin;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class PeripheralRegistryTest {
+    private SimulatedBackend backend;
+    private PeripheralRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.backend = new SimulatedBackend();
+        this.registry = new PeripheralRegistry(this.backend);
+    }
+
+    @Test
+    public void skipsWritesThatChangeNothing() throws IOException {
+        GpioPin gpio = this.registry.openGpio("BCM6");
+        gpio.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+        long calls = this.backend.getCallCount();
+
+        gpio.setValue(false);
+        gpio.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+        assertFalse(gpio.getValue());
+        assertEquals(calls, this.backend.getCallCount());
+        assertEquals(2, this.registry.getSkippedWrites());
+
+        gpio.setValue(true);
+        assertEquals(calls + 1, this.backend.getCallCount());
+        assertTrue(this.backend.getValue("BCM6"));
+        assertTrue(gpio.getValue());
+        assertEquals(calls + 1, this.backend.getCallCount());
+
+        PwmPin pwm = this.registry.openPwm("PWM0");
+        pwm.setDutyCycle(50);
+        pwm.setEnabled(true);
+        calls = this.backend.getCallCount();
+        pwm.setDutyCycle(50);
+        pwm.setEnabled(true);
+        assertEquals(calls, this.backend.getCallCount());
+        assertEquals(50, this.backend.getDutyCycle("PWM0"), 0);
+    }
+
+    @Test
+    public void readsInputsFromTheHardware() throws IOException {
+        GpioPin gpio = this.registry.openGpio("BCM6");
+        gpio.setDirection(GpioPin.DIRECTION_IN);
+        this.backend.setValue("BCM6", true);
+        assertTrue(gpio.getValue());
+        this.backend.setValue("BCM6", false);
+        assertFalse(gpio.getValue());
+    }
+
+    @Test
+    public void sharesOneHardwareHandleUntilTheLastClose() throws IOException {
+        GpioPin first = this.registry.openGpio("BCM6");
+        GpioPin second = this.registry.openGpio("BCM6");
+        first.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+        second.setValue(true);
+        // the value written through the second handle is cached for the first
+        first.setValue(true);
+        assertEquals(1, this.registry.getSkippedWrites());
+
+        first.close();
+        first.close();
+        assertTrue(this.backend.isOpen("BCM6"));
+        try {
+            first.setValue(false);
+            fail("Closed handle accepted a write");
+        } catch (IOException e) {
+            // expected
+        }
+        second.close();
+        assertFalse(this.backend.isOpen("BCM6"));
+
+        // a new open starts from scratch
+        GpioPin third = this.registry.openGpio("BCM6");
+        third.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+        assertTrue(this.backend.isOpen("BCM6"));
+        third.close();
+    }
+
+    @Test
+    public void rejectsAConflictingDirection() throws IOException {
+        GpioPin input = this.registry.openGpio("BCM6");
+        GpioPin output = this.registry.openGpio("BCM6");
+        input.setDirection(GpioPin.DIRECTION_IN);
+        try {
+            output.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+            fail("Input turned into an output");
+        } catch (IOException e) {
+            // expected
+        }
+        input.setDirection(GpioPin.DIRECTION_IN);
+
+        // once the input is closed the pin is free again
+        input.close();
+        output.setDirection(GpioPin.DIRECTION_OUT_INITIALLY_LOW);
+        output.setValue(true);
+        assertTrue(this.backend.getValue("BCM6"));
+        output.close();
+    }
+
+    @Test
+    public void keepsTheFirstEdgeListener() throws IOException {
+        final List<Boolean> edges = new ArrayList<>();
+        EdgeListener listener = new EdgeListener() {
+            @Override
+            public void onEdge(GpioPin pin, boolean value, long timestampNanos) {
+                edges.add(value);
+            }
+        };
+        GpioPin first = this.registry.openGpio("BCM6");
+        GpioPin second = this.registry.openGpio("BCM6");
+        first.setDirection(GpioPin.DIRECTION_IN);
+        first.setEdgeListener(listener);
+        try {
+            second.setEdgeListener(listener);
+            fail("Second edge listener accepted");
+        } catch (IOException e) {
+            // expected
+        }
+        // the second handle has no listener to remove
+        second.setEdgeListener(null);
+        this.backend.injectEdge("BCM6", true);
+        assertEquals(1, edges.size());
+
+        // closing the listening handle stops the reports and frees the pin for another listener
+        first.close();
+        this.backend.injectEdge("BCM6", false);
+        assertEquals(1, edges.size());
+        second.setEdgeListener(listener);
+        this.backend.injectEdge("BCM6", false);
+        assertEquals(2, edges.size());
+        second.close();
+    }
+}
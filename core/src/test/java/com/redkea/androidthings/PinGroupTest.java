@@ -0,0 +1,220 @@
+package com.redkea.androidthings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class PinGroupTest {
+    private static final long MS = 1000000L;
+
+    private final TimingWheelTest.ManualClock clock = new TimingWheelTest.ManualClock();
+    private final TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, this.clock, null);
+    private final SimulatedBackend backend = new SimulatedBackend();
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private Selector selector;
+    private EdgeInputTest.CapturingNetwork network;
+    private Thread networkThread;
+    private Timers timers;
+
+    @Before
+    public void setUp() throws IOException {
+        this.selector = Selector.open();
+        this.network = new EdgeInputTest.CapturingNetwork();
+        // only run to be stopped again, which closes its sockets
+        this.networkThread = new Thread(this.network, "redkeaNetwork");
+        this.networkThread.start();
+        this.timers = new Timers(this.network, new PeripheralRegistry(this.backend), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, this.wheel);
+        this.timers.setBatching(true);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        this.timers.shutdown();
+        this.networkThread.interrupt();
+        this.networkThread.join();
+        for (SocketChannel channel : this.channels) {
+            channel.close();
+        }
+        this.selector.close();
+    }
+
+    @Test
+    public void listsTheWidgetsInOrderAndSetsOneBitPerPin() throws IOException {
+        Connection connection = connect(Network.CAP_BATCH);
+        String[] pins = new String[10];
+        for (int i = 0; i < pins.length; ++i) {
+            pins[i] = "BCM" + i;
+        }
+        setup(connection, pins);
+        Command layout = next(CommandType.BATCH_LAYOUT, connection);
+        assertEquals(100, layout.getInt16(1));
+        assertEquals(2 + pins.length, layout.getParamCount());
+        for (int i = 0; i < pins.length; ++i) {
+            assertEquals("w" + pins[i], layout.getString(2 + i));
+        }
+        short layoutId = layout.getInt16(0);
+        layout.recycle();
+
+        this.backend.setValue("BCM0", true);
+        this.backend.setValue("BCM3", true);
+        this.backend.setValue("BCM9", true);
+        advanceTo(0);
+        Command batch = next(CommandType.DATA_SEND_BATCH, connection);
+        assertEquals(layoutId, batch.getInt16(0));
+        // least significant bit first, the tenth pin in the second byte
+        assertArrayEquals(new byte[]{0x09, 0x02}, batch.getBytes(1));
+        batch.recycle();
+        assertEquals(0, this.network.sent.size());
+
+        this.backend.setValue("BCM0", false);
+        advanceTo(100);
+        batch = next(CommandType.DATA_SEND_BATCH, connection);
+        assertArrayEquals(new byte[]{0x08, 0x02}, batch.getBytes(1));
+        batch.recycle();
+    }
+
+    @Test
+    public void sendsSinglePinsToAppsWithoutBatchSupport() throws IOException {
+        Connection batched = connect(Network.CAP_BATCH);
+        Connection plain = connect(0);
+        setup(batched, "BCM0", "BCM1");
+        next(CommandType.BATCH_LAYOUT, batched).recycle();
+        setup(plain, "BCM1");
+        // the group did not change, so no new layout
+        assertEquals(0, this.network.sent.size());
+
+        this.backend.setValue("BCM1", true);
+        advanceTo(0);
+        int batches = 0;
+        int singles = 0;
+        for (Command command : this.network.sent) {
+            if (command.getCommandType() == CommandType.DATA_SEND_BATCH) {
+                assertEquals(new HashSet<>(Arrays.asList(batched)), command.targets);
+                batches++;
+            } else {
+                assertEquals(CommandType.DATA_SEND, command.getCommandType());
+                assertEquals(new HashSet<>(Arrays.asList(plain)), new HashSet<>(command.targets));
+                assertEquals("wBCM1", command.getString(0));
+                assertEquals(true, command.getBool(1));
+                singles++;
+            }
+            command.recycle();
+        }
+        this.network.sent.clear();
+        assertEquals(1, batches);
+        assertEquals(1, singles);
+    }
+
+    @Test
+    public void sendsANewLayoutWhenMembersOrSubscribersChange() throws IOException {
+        Connection first = connect(Network.CAP_BATCH);
+        Connection second = connect(Network.CAP_BATCH);
+        setup(first, "BCM0", "BCM1");
+        Command layout = next(CommandType.BATCH_LAYOUT, first);
+        short firstId = layout.getInt16(0);
+        layout.recycle();
+
+        // another subscriber to a pin of the group changes the targets
+        setup(second, "BCM1");
+        layout = next(CommandType.BATCH_LAYOUT, first, second);
+        short secondId = layout.getInt16(0);
+        assertNotEquals(firstId, secondId);
+        assertEquals(4, layout.getParamCount());
+        layout.recycle();
+
+        this.timers.unsubscribe(second);
+        next(CommandType.BATCH_LAYOUT, first).recycle();
+
+        // a new pin joins the group after the existing ones
+        setup(first, "BCM0", "BCM1", "BCM2");
+        layout = next(CommandType.BATCH_LAYOUT, first);
+        assertEquals("wBCM0", layout.getString(2));
+        assertEquals("wBCM1", layout.getString(3));
+        assertEquals("wBCM2", layout.getString(4));
+        layout.recycle();
+
+        // once the last subscriber is gone the group stops sampling
+        this.timers.unsubscribe(first);
+        advanceTo(0);
+        advanceTo(500);
+        assertEquals(0, this.network.sent.size());
+    }
+
+    private Connection connect(int capabilities) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        this.channels.add(channel);
+        Connection connection = new Connection(this.channels.size(), channel, this.selector, new Metrics());
+        connection.setCapabilities(capabilities);
+        return connection;
+    }
+
+    private void setup(Connection connection, String... pins) throws IOException {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.SETUP_TIMERS);
+        command.addInt16((short) pins.length);
+        for (String pin : pins) {
+            command.addInt8(CommandType.READ_FROM_DIGITAL_PIN.getCode());
+            command.addString(pin);
+            command.addString("w" + pin);
+            command.addInt16((short) 100);
+        }
+        command.source = connection;
+        this.timers.setup(command);
+        command.recycle();
+    }
+
+    private void advanceTo(long millis) {
+        this.clock.now = millis * MS;
+        this.wheel.advance();
+    }
+
+    /**
+     * @return The oldest captured command, after checking its type and targets.
+     */
+    private Command next(CommandType type, Connection... targets) {
+        Command command = this.network.sent.remove(0);
+        assertEquals(type, command.getCommandType());
+        assertEquals(new HashSet<>(Arrays.asList(targets)), command.targets);
+        return command;
+    }
+}
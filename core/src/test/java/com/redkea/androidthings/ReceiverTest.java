@@ -0,0 +1,254 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class ReceiverTest {
+
+    @Test
+    public void dropsTheOldestFramesBeyondTheBound() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> received = new ArrayList<>();
+        Receiver receiver = new Receiver("key", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                received.add(parser.readFromSlider());
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        }, null, InboundPolicy.dropOldest(2), new Metrics());
+
+        for (int i = 0; i < 5; ++i) {
+            receiver.offer(sliderCommand(i));
+        }
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(2, received.size());
+        assertEquals(3, (int) received.get(0));
+        assertEquals(4, (int) received.get(1));
+        assertEquals(3, receiver.getStats().getDroppedCount());
+    }
+
+    @Test
+    public void dropsFramesAfterClose() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Receiver receiver = new Receiver("key", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+            }
+        }, executor, executor, InboundPolicy.deliverAll(), new Metrics());
+
+        receiver.close();
+        receiver.offer(sliderCommand(0));
+        assertEquals(1, receiver.getStats().getDroppedCount());
+        assertEquals(0, receiver.getStats().getCount());
+    }
+
+    @Test
+    public void dropsFramesTheExecutorRejects() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        Receiver receiver = new Receiver("key", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+            }
+        }, executor, null, InboundPolicy.deliverAll(), new Metrics());
+
+        receiver.offer(sliderCommand(1));
+        receiver.offer(sliderCommand(2));
+        assertEquals(2, receiver.getStats().getDroppedCount());
+    }
+
+    @Test
+    public void runsCallsForOneKeyInOrderOnAPool() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        // as many as deliverAll() holds, so none are dropped however far the pool falls behind
+        final int frames = InboundPolicy.DELIVER_ALL_BOUND;
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(frames);
+        Receiver receiver = new Receiver("key", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                int running = active.incrementAndGet();
+                if (running > maxActive.get()) {
+                    maxActive.set(running);
+                }
+                received.add(parser.readFromSlider());
+                active.decrementAndGet();
+                done.countDown();
+            }
+        }, pool, null, InboundPolicy.deliverAll(), new Metrics());
+
+        for (int i = 0; i < frames; ++i) {
+            receiver.offer(sliderCommand("key", i));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(1, maxActive.get());
+        for (int i = 0; i < frames; ++i) {
+            assertEquals(i, (int) received.get(i));
+        }
+    }
+
+    @Test
+    public void runsDifferentKeysInParallelOnASharedPool() throws Exception {
+        // the same kind of pool Dispatcher builds for WORKER_POOL, sized so that
+        // the test does not depend on the number of cores
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (String key : new String[] { "a", "b" }) {
+            Receiver receiver = new Receiver(key, meetAt(barrier, done), pool, null, InboundPolicy.deliverAll(),
+                    new Metrics());
+            receiver.offer(sliderCommand(key, 1));
+        }
+        // each call only returns once the other key's call has reached the barrier too
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void runsDifferentKeysInParallelOnDedicatedThreads() throws Exception {
+        Dispatcher dispatcher = new Dispatcher(null, new SimulatedBackend(), null, new Metrics());
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        CountDownLatch done = new CountDownLatch(2);
+        dispatcher.registerReceiver("a", meetAt(barrier, done), DispatchMode.DEDICATED_THREAD,
+                InboundPolicy.deliverAll());
+        dispatcher.registerReceiver("b", meetAt(barrier, done), DispatchMode.DEDICATED_THREAD,
+                InboundPolicy.deliverAll());
+
+        dispatcher.dispatch(sliderCommand("a", 1));
+        dispatcher.dispatch(sliderCommand("b", 1));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void runsCallsInOrderThroughTheWorkerPool() throws Exception {
+        Dispatcher dispatcher = new Dispatcher(null, new SimulatedBackend(), null, new Metrics());
+        final int frames = 500;
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(frames);
+        dispatcher.registerReceiver("key", new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                received.add(parser.readFromSlider());
+                done.countDown();
+            }
+        }, DispatchMode.WORKER_POOL, InboundPolicy.deliverAll());
+
+        for (int i = 0; i < frames; ++i) {
+            dispatcher.dispatch(sliderCommand("key", i));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+        for (int i = 0; i < frames; ++i) {
+            assertEquals(i, (int) received.get(i));
+        }
+    }
+
+    @Test
+    public void yieldsTheThreadAfterSixteenFrames() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<String> received = new ArrayList<>();
+        Executor queue = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+        Receiver first = new Receiver("a", record("a", received), queue, null, InboundPolicy.deliverAll(),
+                new Metrics());
+        Receiver second = new Receiver("b", record("b", received), queue, null, InboundPolicy.deliverAll(),
+                new Metrics());
+        for (int i = 0; i < 20; ++i) {
+            first.offer(sliderCommand("a", i));
+            second.offer(sliderCommand("b", i));
+        }
+        assertEquals(2, tasks.size());
+
+        // run the queued tasks in submission order, like a single worker would
+        for (int i = 0; i < tasks.size(); ++i) {
+            tasks.get(i).run();
+        }
+        assertEquals(4, tasks.size());
+        assertEquals(40, received.size());
+        assertEquals(Collections.nCopies(16, "a"), received.subList(0, 16));
+        assertEquals(Collections.nCopies(16, "b"), received.subList(16, 32));
+        assertEquals(Collections.nCopies(4, "a"), received.subList(32, 36));
+        assertEquals(Collections.nCopies(4, "b"), received.subList(36, 40));
+    }
+
+    private static ReceiveFunction meetAt(final CyclicBarrier barrier, final CountDownLatch done) {
+        return new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    done.countDown();
+                } catch (Exception e) {
+                    // the other key never ran alongside this one; done stays short
+                }
+            }
+        };
+    }
+
+    private static ReceiveFunction record(final String key, final List<String> received) {
+        return new ReceiveFunction() {
+            @Override
+            public void onReceive(ParameterParser parser) {
+                received.add(key);
+            }
+        };
+    }
+
+    private static Command sliderCommand(int value) {
+        return sliderCommand("key", value);
+    }
+
+    private static Command sliderCommand(String key, int value) {
+        Command command = Command.obtain();
+        command.setCommandType(CommandType.WRITE_TO_FUNCTION);
+        command.addString(key);
+        command.addInt16((short) value);
+        return command;
+    }
+}
@@ -0,0 +1,134 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class SampleBatchTest {
+
+    @Test
+    public void encodesTimestampedSamples() {
+        SampleBatch batch = new SampleBatch(4);
+        assertTrue(batch.add(1000, 1.5f));
+        assertTrue(batch.add(1100, -2f));
+        // times may go backwards, the deltas are zigzag encoded
+        assertTrue(batch.add(1050, 3.25f));
+        assertTrue(batch.add(1000000, 0f));
+        assertFalse(batch.add(1000001, 9f));
+
+        Command command = Command.obtain();
+        assertTrue(batch.moveTo(command));
+        assertEquals(0, batch.size());
+        Samples samples = decode(command.getBytes(0));
+        command.recycle();
+
+        assertArrayEquals(new long[]{1000, 1100, 1050, 1000000}, samples.times);
+        assertArrayEquals(new float[]{1.5f, -2f, 3.25f, 0f}, samples.values, 0);
+    }
+
+    @Test
+    public void encodesEvenlySpacedSamplesWithOneInterval() {
+        float[] values = new float[100];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i / 4f;
+        }
+        Command command = Command.obtain();
+        SampleBatch.encode(command, null, values, 10, 50, 5000, 1000);
+        byte[] bytes = command.getBytes(0);
+        command.recycle();
+        // flags, one count byte, the first time, two interval bytes and the values
+        assertEquals(1 + 1 + 8 + 2 + 4 * 50, bytes.length);
+
+        Samples samples = decode(bytes);
+        assertEquals(50, samples.values.length);
+        for (int i = 0; i < 50; ++i) {
+            assertEquals(5000 + i * 1000, samples.times[i]);
+            assertEquals((10 + i) / 4f, samples.values[i], 0);
+        }
+    }
+
+    @Test
+    public void sendsNothingWhenEmpty() {
+        SampleBatch batch = new SampleBatch(SampleBatch.MAX_SAMPLES);
+        Command command = Command.obtain();
+        assertFalse(batch.moveTo(command));
+        assertEquals(0, command.getParamCount());
+        command.recycle();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacitiesAboveOneFrame() {
+        new SampleBatch(SampleBatch.MAX_SAMPLES + 1);
+    }
+
+    /**
+     * Decodes the bytes parameter of a DATA_SEND_SERIES frame like an app does.
+     */
+    private static Samples decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        boolean even = (in.get() & SampleBatch.FLAG_EVEN) != 0;
+        int count = (int) getVarint(in);
+        Samples samples = new Samples(count);
+        samples.times[0] = in.getLong();
+        long interval = even ? unzigzag(getVarint(in)) : 0;
+        for (int i = 1; i < count; ++i) {
+            samples.times[i] = samples.times[i - 1] + (even ? interval : unzigzag(getVarint(in)));
+        }
+        for (int i = 0; i < count; ++i) {
+            samples.values[i] = in.getFloat();
+        }
+        assertFalse(in.hasRemaining());
+        return samples;
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Samples {
+        final long[] times;
+        final float[] values;
+
+        Samples(int count) {
+            this.times = new long[count];
+            this.values = new float[count];
+        }
+    }
+}
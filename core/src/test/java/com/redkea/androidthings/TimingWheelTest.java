@@ -0,0 +1,152 @@
+package com.redkea.androidthings;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+public class TimingWheelTest {
+    private static final long MS = 1000000L;
+
+    private final ManualClock clock = new ManualClock();
+    private final TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, this.clock, null);
+    private final List<Long> runs = new ArrayList<>();
+
+    @Test
+    public void advancesFixedRateDeadlinesFromThePreviousDeadline() {
+        TimingWheel.Task task = this.wheel.scheduleAtFixedRate(recorder(), 10, 10, TimeUnit.MILLISECONDS);
+        assertEquals(10 * MS, advanceTo(0));
+        assertEquals(10 * MS, advanceTo(10));
+        assertEquals(5 * MS, advanceTo(15));
+        assertEquals(1, this.runs.size());
+        // a late run does not push the following deadlines back
+        assertEquals(7 * MS, advanceTo(23));
+        assertEquals(10 * MS, advanceTo(30));
+        assertEquals(3, task.getRuns());
+        assertEquals(0, task.getOverruns());
+        assertEquals(3 * MS, task.getMaxJitterNanos());
+        assertEquals(list(10, 23, 30), this.runs);
+    }
+
+    @Test
+    public void countsSkippedRunsAsOverruns() {
+        TimingWheel.Task task = this.wheel.scheduleAtFixedRate(recorder(), 10, 10, TimeUnit.MILLISECONDS);
+        advanceTo(10);
+        // the runs due at 20, 30, 40 and 50 ms are late; the one for 20 still happens, the next
+        // two are skipped and the one for 50 is due right away
+        assertEquals(5 * MS, advanceTo(55));
+        assertEquals(list(10, 55, 55), this.runs);
+        assertEquals(3, task.getRuns());
+        assertEquals(2, task.getOverruns());
+        advanceTo(60);
+        assertEquals(4, task.getRuns());
+    }
+
+    @Test
+    public void runsOneShotTasksOnce() {
+        TimingWheel.Task task = this.wheel.schedule(recorder(), 5, TimeUnit.MILLISECONDS);
+        assertEquals(5 * MS, advanceTo(0));
+        assertEquals(-1, advanceTo(5));
+        assertEquals(-1, advanceTo(100));
+        assertEquals(1, task.getRuns());
+        assertEquals(list(5), this.runs);
+    }
+
+    @Test
+    public void neverRunsCancelledTasks() {
+        TimingWheel.Task early = this.wheel.schedule(recorder(), 5, TimeUnit.MILLISECONDS);
+        // cancelled before the wheel even took it over
+        early.cancel();
+        TimingWheel.Task periodic = this.wheel.scheduleAtFixedRate(recorder(), 10, 10, TimeUnit.MILLISECONDS);
+        advanceTo(0);
+        advanceTo(10);
+        periodic.cancel();
+        // the cancelled task is unlinked when its deadline comes up, after which the wheel idles
+        assertEquals(-1, advanceTo(20));
+        assertEquals(-1, advanceTo(100));
+        assertEquals(0, early.getRuns());
+        assertEquals(1, periodic.getRuns());
+    }
+
+    @Test
+    public void keepsDeadlinesMoreThanOneRevolutionAhead() {
+        this.wheel.schedule(recorder(), 1500, TimeUnit.MILLISECONDS);
+        this.wheel.schedule(recorder(), 700, TimeUnit.MILLISECONDS);
+        TimingWheel.Task periodic = this.wheel.scheduleAtFixedRate(recorder(), 600, 600, TimeUnit.MILLISECONDS);
+        assertEquals(600 * MS, advanceTo(0));
+        assertEquals(100 * MS, advanceTo(600));
+        assertEquals(500 * MS, advanceTo(700));
+        // 988 ms is in the wheel slot of 1500 ms, one revolution earlier
+        assertEquals(212 * MS, advanceTo(988));
+        assertEquals(list(600, 700), this.runs);
+        assertEquals(300 * MS, advanceTo(1200));
+        assertEquals(300 * MS, advanceTo(1500));
+        assertEquals(list(600, 700, 1200, 1500), this.runs);
+        assertEquals(2, periodic.getRuns());
+    }
+
+    @Test
+    public void restartsFromTheCurrentTimeAfterIdling() {
+        this.wheel.schedule(recorder(), 1, TimeUnit.MILLISECONDS);
+        advanceTo(1);
+        assertEquals(-1, advanceTo(10000));
+        this.wheel.schedule(recorder(), 3, TimeUnit.MILLISECONDS);
+        assertEquals(3 * MS, advanceTo(10000));
+        assertEquals(-1, advanceTo(10003));
+        assertEquals(list(1, 10003), this.runs);
+    }
+
+    private long advanceTo(long millis) {
+        this.clock.now = millis * MS;
+        return this.wheel.advance();
+    }
+
+    private Runnable recorder() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runs.add(clock.now / MS);
+            }
+        };
+    }
+
+    private static List<Long> list(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    static final class ManualClock implements TimingWheel.Clock {
+        long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return this.now;
+        }
+    }
+}
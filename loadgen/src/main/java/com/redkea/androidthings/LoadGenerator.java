@@ -0,0 +1,592 @@
+package com.redkea.androidthings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Headless client simulator for the port 5050 protocol.
+ * <p>
+ * Opens a number of concurrent connections, sets up timers on the device and fires PING,
+ * WRITE_TO_FUNCTION and WRITE_TO_DIGITAL_PIN frames at fixed rates. It reports throughput
+ * periodically and, at the end, the PONG round-trip times and the inter-arrival times and jitter of
+ * DATA_SEND frames as latency histograms. All connections are driven by one selector thread, so
+ * the generator itself stays cheap compared to the device under test.
+ * <p>
+ * Run {@code LoadGenerator --help} for the options.
+ */
+public final class LoadGenerator {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_OUTSTANDING_PINGS = 4096;
+
+    private final Options options;
+    private final Selector selector;
+    private final List<Client> clients = new ArrayList<>();
+    private final String textPayload;
+
+    private final Histogram rtt = new Histogram();
+    private final Histogram interArrival = new Histogram();
+    private final Histogram jitter = new Histogram();
+    private final long[] sent = new long[3];
+    private final long[] lastSent = new long[3];
+    private long pongs;
+    private long dataFrames;
+    private long bytesOut;
+    private long bytesIn;
+    private long lastPongs;
+    private long lastDataFrames;
+    private long lastBytesOut;
+    private long lastBytesIn;
+    private long errors;
+    private long heartbeats;
+    private long seriesSamples;
+
+    private static final int PING = 0;
+    private static final int FUNCTION = 1;
+    private static final int PIN = 2;
+
+    private LoadGenerator(Options options) throws IOException {
+        this.options = options;
+        this.selector = Selector.open();
+        int textLength = options.payload.startsWith("text:") ? Integer.parseInt(options.payload.substring(5)) : 0;
+        this.textPayload = new String(new char[textLength]).replace('\0', 'x');
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        if (options == null) {
+            Options.printUsage();
+            return;
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < this.options.connections; ++i) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(new InetSocketAddress(this.options.host, this.options.port));
+            Client client = new Client(i, channel);
+            client.key = channel.register(this.selector, SelectionKey.OP_CONNECT, client);
+            this.clients.add(client);
+        }
+
+        long end = start + this.options.durationSeconds * SECOND;
+        long nextReport = start + this.options.reportSeconds * SECOND;
+        long lastReport = start;
+        long now;
+        while ((now = System.nanoTime()) < end && !this.clients.isEmpty()) {
+            this.selector.select(1);
+            now = System.nanoTime();
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        client.connected(now);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        client.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        client.flush();
+                    }
+                } catch (IOException e) {
+                    fail(client, e);
+                }
+            }
+
+            for (int i = this.clients.size() - 1; i >= 0; --i) {
+                Client client = this.clients.get(i);
+                try {
+                    client.pace(System.nanoTime());
+                    client.flush();
+                } catch (IOException e) {
+                    fail(client, e);
+                }
+            }
+
+            if (now >= nextReport) {
+                report(now - start, now - lastReport);
+                lastReport = now;
+                nextReport += this.options.reportSeconds * SECOND;
+            }
+        }
+
+        for (Client client : this.clients) {
+            client.close();
+        }
+        this.selector.close();
+        summary(System.nanoTime() - start);
+    }
+
+    private void fail(Client client, IOException e) {
+        this.errors++;
+        System.out.println("connection " + client.id + " failed: " + e.getMessage());
+        client.close();
+        this.clients.remove(client);
+    }
+
+    private void report(long elapsed, long interval) {
+        double seconds = (double) interval / SECOND;
+        System.out.println(String.format(Locale.US,
+                "[%4ds] conns=%d sent/s ping=%.0f fn=%.0f pin=%.0f | recv/s pong=%.0f data=%.0f | out=%.1fKB/s in=%.1fKB/s | rtt p50=%dus p99=%dus",
+                TimeUnit.NANOSECONDS.toSeconds(elapsed), this.clients.size(),
+                (this.sent[PING] - this.lastSent[PING]) / seconds,
+                (this.sent[FUNCTION] - this.lastSent[FUNCTION]) / seconds,
+                (this.sent[PIN] - this.lastSent[PIN]) / seconds,
+                (this.pongs - this.lastPongs) / seconds,
+                (this.dataFrames - this.lastDataFrames) / seconds,
+                (this.bytesOut - this.lastBytesOut) / seconds / 1024,
+                (this.bytesIn - this.lastBytesIn) / seconds / 1024,
+                TimeUnit.NANOSECONDS.toMicros(this.rtt.getValueAtPercentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(this.rtt.getValueAtPercentile(99))));
+        System.arraycopy(this.sent, 0, this.lastSent, 0, this.sent.length);
+        this.lastPongs = this.pongs;
+        this.lastDataFrames = this.dataFrames;
+        this.lastBytesOut = this.bytesOut;
+        this.lastBytesIn = this.bytesIn;
+    }
+
+    private void summary(long elapsed) {
+        double seconds = (double) elapsed / SECOND;
+        System.out.println();
+        System.out.println(String.format(Locale.US, "duration %.1fs, %d connections, %d errors", seconds,
+                this.options.connections, this.errors));
+        System.out.println(String.format(Locale.US,
+                "sent %d pings, %d function writes, %d pin writes (%.0f frames/s, %.1f KB/s)",
+                this.sent[PING], this.sent[FUNCTION], this.sent[PIN],
+                (this.sent[PING] + this.sent[FUNCTION] + this.sent[PIN]) / seconds, this.bytesOut / seconds / 1024));
+        System.out.println(String.format(Locale.US,
+                "received %d pongs, %d data frames, %d heartbeats (%.0f frames/s, %.1f KB/s)", this.pongs,
+                this.dataFrames, this.heartbeats, (this.pongs + this.dataFrames + this.heartbeats) / seconds,
+                this.bytesIn / seconds / 1024));
+        if (this.seriesSamples > 0) {
+            System.out.println(String.format(Locale.US, "received %d series samples (%.0f samples/s)",
+                    this.seriesSamples, this.seriesSamples / seconds));
+        }
+        printHistogram("PONG round-trip time", this.rtt);
+        printHistogram("DATA_SEND inter-arrival time", this.interArrival);
+        printHistogram("DATA_SEND jitter", this.jitter);
+    }
+
+    private static void printHistogram(String name, Histogram histogram) {
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%s (us), %d samples, mean %.1f", name, histogram.getCount(),
+                histogram.getMean() / 1000));
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        double[] percentiles = {50, 75, 90, 95, 99, 99.9, 99.99};
+        for (double percentile : percentiles) {
+            System.out.println(String.format(Locale.US, "  %8.3f%% %12.1f", percentile,
+                    histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        System.out.println(String.format(Locale.US, "  %8s  %12.1f", "max", histogram.getMax() / 1000.0));
+    }
+
+    private final class Client {
+        private final int id;
+        private final SocketChannel channel;
+        private final FrameDecoder decoder = new FrameDecoder();
+        private FrameInflater inflater;
+        private final OutboundBuffer outbound = new OutboundBuffer();
+        private final long[] pingTimes = new long[MAX_OUTSTANDING_PINGS];
+        private final Map<String, long[]> arrivals = new HashMap<>();
+        private SelectionKey key;
+        private boolean connected;
+        private boolean ready;
+        private int version = Command.VERSION_1;
+        private boolean writeInterest;
+        private int pingHead;
+        private int pingCount;
+        private long[] nextSend = new long[3];
+        private short sliderValue;
+        private boolean pinValue;
+
+        Client(int id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+
+        void connected(long now) throws IOException {
+            this.channel.finishConnect();
+            this.connected = true;
+            this.key.interestOps(SelectionKey.OP_READ);
+            if (options.protocol > Command.VERSION_1 || options.deflate || options.typed) {
+                // nothing else is sent until the device answered which version both sides speak
+                Command command = Command.obtain();
+                command.setCommandType(CommandType.WELCOME);
+                command.addInt8((byte) options.protocol);
+                command.addInt16((short) (Network.CAP_HEARTBEAT | Network.CAP_BATCH
+                        | (options.deflate ? Network.CAP_DEFLATE : 0) | (options.typed ? Network.CAP_TYPED_DATA : 0)));
+                send(command);
+            } else {
+                start(now);
+            }
+        }
+
+        private void welcomed(Command command, long now) throws IOException {
+            this.version = command.getInt8(0);
+            this.decoder.setVersion(this.version);
+            if (this.version != options.protocol) {
+                System.out.println("connection " + this.id + " fell back to protocol version " + this.version);
+            }
+            if ((command.getInt16(1) & Network.CAP_DEFLATE) != 0) {
+                this.inflater = new FrameInflater();
+                this.inflater.setVersion(this.version);
+            } else if (options.deflate) {
+                System.out.println("connection " + this.id + " is not compressed");
+            }
+            start(now);
+        }
+
+        private void start(long now) throws IOException {
+            this.ready = true;
+            for (int i = 0; i < this.nextSend.length; ++i) {
+                this.nextSend[i] = now;
+            }
+            setupTimers();
+        }
+
+        private void setupTimers() throws IOException {
+            int count = options.functionTimers.size() + options.pinTimers.size();
+            if (count == 0) {
+                return;
+            }
+            // widget IDs carry the connection id, data for other connections' timers is ignored
+            String prefix = "c" + this.id;
+            Command command = Command.obtain();
+            command.setCommandType(CommandType.SETUP_TIMERS);
+            command.addInt16((short) count);
+            for (int i = 0; i < options.functionTimers.size(); ++i) {
+                addTimer(command, CommandType.READ_FROM_FUNCTION, options.functionTimers.get(i), prefix + "fn" + i);
+            }
+            for (int i = 0; i < options.pinTimers.size(); ++i) {
+                addTimer(command, CommandType.READ_FROM_DIGITAL_PIN, options.pinTimers.get(i), prefix + "pin" + i);
+            }
+            send(command);
+        }
+
+        private void addTimer(Command command, CommandType type, Timer timer, String widgetID) {
+            command.addCommandType(type);
+            command.addString(timer.source);
+            command.addString(widgetID);
+            command.addInt16((short) timer.intervalMillis);
+            this.arrivals.put(widgetID, new long[]{TimeUnit.MILLISECONDS.toNanos(timer.intervalMillis), 0});
+        }
+
+        void pace(long now) throws IOException {
+            if (!this.ready) {
+                return;
+            }
+            pace(PING, options.pingRate, now);
+            pace(FUNCTION, options.functionRate, now);
+            pace(PIN, options.pinRate, now);
+        }
+
+        private void pace(int stream, double rate, long now) throws IOException {
+            if (rate <= 0) {
+                return;
+            }
+            long period = (long) (SECOND / rate);
+            while (now >= this.nextSend[stream]) {
+                sendStream(stream, now);
+                this.nextSend[stream] += period;
+                if (now - this.nextSend[stream] > SECOND) {
+                    // we fell behind by more than a second, don't try to catch up
+                    this.nextSend[stream] = now;
+                }
+            }
+        }
+
+        private void sendStream(int stream, long now) throws IOException {
+            Command command = Command.obtain();
+            if (stream == PING) {
+                if (this.pingCount == MAX_OUTSTANDING_PINGS) {
+                    command.recycle();
+                    return;
+                }
+                command.setCommandType(CommandType.PING);
+                this.pingTimes[(this.pingHead + this.pingCount) % MAX_OUTSTANDING_PINGS] = now;
+                this.pingCount++;
+            } else if (stream == FUNCTION) {
+                command.setCommandType(CommandType.WRITE_TO_FUNCTION);
+                command.addString(options.functionKey);
+                addPayload(command);
+            } else {
+                command.setCommandType(CommandType.WRITE_TO_DIGITAL_PIN);
+                command.addString(options.pin);
+                this.pinValue = !this.pinValue;
+                command.addBool(this.pinValue);
+            }
+            sent[stream]++;
+            send(command);
+        }
+
+        private void addPayload(Command command) {
+            if (options.payload.equals("slider")) {
+                command.addInt16(this.sliderValue++);
+            } else if (options.payload.equals("toggle")) {
+                command.addBool((this.sliderValue++ & 1) != 0);
+            } else if (options.payload.equals("float")) {
+                command.addFloat(this.sliderValue++ / 10f);
+            } else {
+                command.addString(textPayload);
+            }
+        }
+
+        private void send(Command command) throws IOException {
+            Frame frame = Frame.encode(command, this.version);
+            command.recycle();
+            bytesOut += frame.length();
+            this.outbound.append(frame);
+            frame.release();
+        }
+
+        void read() throws IOException {
+            long before = System.nanoTime();
+            bytesIn += this.decoder.readFrom(this.channel);
+            Command command;
+            while ((command = this.decoder.nextFrame()) != null) {
+                if (command.getCommandType() == CommandType.WELCOME && !this.ready) {
+                    welcomed(command, before);
+                } else if (command.getCommandType() == CommandType.COMPRESSED && this.inflater != null) {
+                    this.inflater.inflate(command);
+                    Command inflated;
+                    while ((inflated = this.inflater.nextFrame()) != null) {
+                        received(inflated, before);
+                        inflated.recycle();
+                    }
+                } else {
+                    received(command, before);
+                }
+                command.recycle();
+            }
+        }
+
+        private void received(Command command, long before) throws IOException {
+            if (command.getCommandType() == CommandType.PING) {
+                // a heartbeat of the device
+                Command pong = Command.obtain();
+                pong.setCommandType(CommandType.PONG);
+                pong.addInt16(command.getInt16(0));
+                send(pong);
+                heartbeats++;
+            } else if (command.getCommandType() == CommandType.PONG && this.pingCount > 0) {
+                rtt.record(before - this.pingTimes[this.pingHead]);
+                this.pingHead = (this.pingHead + 1) % MAX_OUTSTANDING_PINGS;
+                this.pingCount--;
+                pongs++;
+            } else if (command.getCommandType() == CommandType.DATA_SEND) {
+                dataFrames++;
+                long[] arrival = this.arrivals.get(command.getString(0));
+                if (arrival != null) {
+                    if (arrival[1] != 0) {
+                        long delta = before - arrival[1];
+                        interArrival.record(delta);
+                        jitter.record(Math.abs(delta - arrival[0]));
+                    }
+                    arrival[1] = before;
+                }
+            } else if (command.getCommandType() == CommandType.DATA_SEND_BATCH) {
+                dataFrames++;
+            } else if (command.getCommandType() == CommandType.DATA_SEND_SERIES) {
+                dataFrames++;
+                // the varint sample count follows the flags byte of the batch
+                ByteBuffer batch = command.getData(1);
+                batch.get();
+                int count = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = batch.get();
+                    count |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                seriesSamples += count;
+            }
+        }
+
+        void flush() throws IOException {
+            this.outbound.writeTo(this.channel);
+            boolean pending = !this.outbound.isEmpty();
+            if (pending != this.writeInterest && this.connected) {
+                this.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                this.writeInterest = pending;
+            }
+        }
+
+        void close() {
+            this.decoder.release();
+            this.outbound.release();
+            if (this.inflater != null) {
+                this.inflater.end();
+            }
+            this.key.cancel();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static final class Timer {
+        final String source;
+        final int intervalMillis;
+
+        Timer(String spec) {
+            int colon = spec.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected source:intervalMillis, got " + spec);
+            }
+            this.source = spec.substring(0, colon);
+            this.intervalMillis = Integer.parseInt(spec.substring(colon + 1));
+        }
+    }
+
+    private static final class Options {
+        String host = "127.0.0.1";
+        int port = 5050;
+        int connections = 1;
+        int durationSeconds = 30;
+        int reportSeconds = 5;
+        double pingRate = 10;
+        double functionRate = 0;
+        double pinRate = 0;
+        String functionKey = "onSlide";
+        String payload = "slider";
+        String pin = "BCM6";
+        int protocol = Command.VERSION_1;
+        boolean deflate = false;
+        boolean typed = true;
+        List<Timer> functionTimers = new ArrayList<>();
+        List<Timer> pinTimers = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; ++i) {
+                String arg = args[i];
+                if (arg.equals("--help") || i + 1 >= args.length) {
+                    return null;
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--host":
+                        options.host = value;
+                        break;
+                    case "--port":
+                        options.port = Integer.parseInt(value);
+                        break;
+                    case "--connections":
+                        options.connections = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "--report":
+                        options.reportSeconds = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--ping-rate":
+                        options.pingRate = Double.parseDouble(value);
+                        break;
+                    case "--function-rate":
+                        options.functionRate = Double.parseDouble(value);
+                        break;
+                    case "--pin-rate":
+                        options.pinRate = Double.parseDouble(value);
+                        break;
+                    case "--function-key":
+                        options.functionKey = value;
+                        break;
+                    case "--payload":
+                        if (!value.matches("slider|toggle|float|text:\\d+")) {
+                            return null;
+                        }
+                        options.payload = value;
+                        break;
+                    case "--pin":
+                        options.pin = value;
+                        break;
+                    case "--function-timer":
+                        options.functionTimers.add(new Timer(value));
+                        break;
+                    case "--pin-timer":
+                        options.pinTimers.add(new Timer(value));
+                        break;
+                    case "--deflate":
+                        options.deflate = Boolean.parseBoolean(value);
+                        break;
+                    case "--typed":
+                        options.typed = Boolean.parseBoolean(value);
+                        break;
+                    case "--protocol":
+                        options.protocol = Integer.parseInt(value);
+                        if (options.protocol != Command.VERSION_1 && options.protocol != Command.VERSION_2) {
+                            return null;
+                        }
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return options;
+        }
+
+        static void printUsage() {
+            System.out.println("Usage: LoadGenerator [options]");
+            System.out.println("  --host HOST               device address (127.0.0.1)");
+            System.out.println("  --port PORT               device port (5050)");
+            System.out.println("  --connections N           concurrent connections (1)");
+            System.out.println("  --duration SECONDS         test duration (30)");
+            System.out.println("  --report SECONDS           throughput report interval (5)");
+            System.out.println("  --ping-rate R              PINGs per second and connection (10)");
+            System.out.println("  --function-rate R          WRITE_TO_FUNCTION frames per second and connection (0)");
+            System.out.println("  --function-key KEY         receiver key for WRITE_TO_FUNCTION (onSlide)");
+            System.out.println("  --payload P                slider, toggle, float or text:LENGTH (slider)");
+            System.out.println("  --pin-rate R               WRITE_TO_DIGITAL_PIN frames per second and connection (0)");
+            System.out.println("  --pin NAME                 output pin for WRITE_TO_DIGITAL_PIN (BCM6)");
+            System.out.println("  --function-timer KEY:MS    READ_FROM_FUNCTION timer to set up, repeatable");
+            System.out.println("  --pin-timer NAME:MS        READ_FROM_DIGITAL_PIN timer to set up, repeatable");
+            System.out.println("  --protocol V               frame encoding to negotiate, 1 or 2 (1)");
+            System.out.println("  --deflate true|false       ask the device to compress what it sends (false)");
+            System.out.println("  --typed true|false         accept numbers and series besides text (true)");
+        }
+    }
+}
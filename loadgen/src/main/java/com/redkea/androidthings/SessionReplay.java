@@ -0,0 +1,334 @@
+package com.redkea.androidthings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Plays a session recorded by {@link Manager#startRecording(File)} back over TCP.
+ * <p>
+ * Every recorded connection is opened again and its inbound frames are sent byte for byte, in the
+ * recorded order across all connections, either at the recorded pace scaled by {@code --speed}
+ * or as fast as possible with {@code --speed 0}. Without {@code --host}, the session is played
+ * against a {@link Manager} started in this process with the {@link SimulatedBackend}, with
+ * receivers and senders registered for all keys the recording uses, and the manager's metrics
+ * are printed at the end.
+ * <p>
+ * Usage: {@code SessionReplay [--speed FACTOR] [--host HOST] [--port PORT] DIRECTORY}
+ */
+public final class SessionReplay {
+    private static final long DRAIN_MILLIS = 500;
+
+    private final File directory;
+    private final double speed;
+    private final Map<Integer, Replayed> connections = new HashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private long framesSent = 0;
+    private long bytesSent = 0;
+    private long framesRecordedOut = 0;
+    private long bytesRecordedOut = 0;
+    private long lastNanos = 0;
+
+    private SessionReplay(File directory, double speed) {
+        this.directory = directory;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        double speed = 1;
+        String host = null;
+        int port = 5050;
+        File directory = null;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--speed") && i + 1 < args.length) {
+                speed = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (directory == null && !args[i].startsWith("--")) {
+                directory = new File(args[i]);
+            } else {
+                directory = null;
+                break;
+            }
+        }
+        if (directory == null) {
+            System.out.println("Usage: SessionReplay [--speed FACTOR] [--host HOST] [--port PORT] DIRECTORY");
+            System.out.println("  --speed FACTOR   1 replays at the recorded pace, 0 as fast as possible (1)");
+            System.out.println("  --host HOST      device to replay against, a local simulated one if omitted");
+            return;
+        }
+
+        SessionReplay replay = new SessionReplay(directory, speed);
+        Manager manager = null;
+        if (host == null) {
+            manager = replay.startLocalManager();
+            host = "127.0.0.1";
+        }
+        try {
+            replay.run(new InetSocketAddress(host, port));
+            if (manager != null) {
+                System.out.println();
+                System.out.println(manager.getMetrics());
+            }
+        } finally {
+            if (manager != null) {
+                manager.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Starts a manager with receivers and senders for all keys the inbound frames refer to.
+     */
+    private Manager startLocalManager() throws IOException {
+        final Set<String> receiveKeys = new LinkedHashSet<>();
+        final Set<String> sendKeys = new LinkedHashSet<>();
+        forEachEntry(new EntryHandler() {
+            @Override
+            public void onEntry(byte kind, int version, int connectionId, long nanos, ByteBuffer frame) throws IOException {
+                if (kind != SessionRecorder.IN) {
+                    return;
+                }
+                Command command = decode(version, frame);
+                if (command.getCommandType() == CommandType.WRITE_TO_FUNCTION) {
+                    receiveKeys.add(command.getString(0));
+                } else if (command.getCommandType() == CommandType.SETUP_TIMERS) {
+                    // [count] then [type, source, widget, interval] per timer
+                    for (int i = 1; i + 3 < command.getParamCount(); i += 4) {
+                        if (command.getInt8(i) == CommandType.READ_FROM_FUNCTION.getCode()) {
+                            sendKeys.add(command.getString(i + 1));
+                        }
+                    }
+                }
+                command.recycle();
+            }
+        });
+
+        Manager manager = new Manager("session-replay", new SimulatedBackend(), Executors.newSingleThreadExecutor());
+        for (String key : receiveKeys) {
+            manager.registerReceiver(key, new ReceiveFunction() {
+                @Override
+                public void onReceive(ParameterParser parser) {
+                }
+            });
+        }
+        for (final String key : sendKeys) {
+            manager.registerSender(key, new SendFunction() {
+                @Override
+                public void onSend(Sender sender) {
+                    sender.sendToTextOutput("Replayed " + key);
+                }
+            });
+        }
+        manager.start();
+        System.out.println("Local device with receivers " + receiveKeys + " and senders " + sendKeys);
+        return manager;
+    }
+
+    private void run(final InetSocketAddress address) throws IOException, InterruptedException {
+        final long[] first = {0};
+        final long start = System.nanoTime();
+        forEachEntry(new EntryHandler() {
+            @Override
+            public void onEntry(byte kind, int version, int connectionId, long nanos, ByteBuffer frame) throws IOException {
+                if (first[0] == 0) {
+                    first[0] = nanos;
+                }
+                if (kind == SessionRecorder.OUT) {
+                    framesRecordedOut++;
+                    bytesRecordedOut += frame.remaining();
+                    return;
+                }
+                pace(start, nanos - first[0]);
+                if (kind == SessionRecorder.OPEN) {
+                    connections.put(connectionId, new Replayed(address));
+                } else if (kind == SessionRecorder.CLOSE) {
+                    Replayed replayed = connections.remove(connectionId);
+                    if (replayed != null) {
+                        replayed.finish();
+                    }
+                } else {
+                    Replayed replayed = connections.get(connectionId);
+                    if (replayed == null) {
+                        // the recording started while this connection was open already
+                        replayed = new Replayed(address);
+                        connections.put(connectionId, replayed);
+                    }
+                    framesSent++;
+                    bytesSent += frame.remaining();
+                    replayed.send(frame);
+                }
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        Thread.sleep(DRAIN_MILLIS);
+        for (Replayed replayed : this.connections.values()) {
+            replayed.close();
+        }
+
+        System.out.println(String.format(Locale.US, "replayed %d frames, %d bytes in %.3fs (recorded %.3fs)",
+                this.framesSent, this.bytesSent, elapsed / 1e9, this.lastNanos / 1e9));
+        System.out.println(String.format(Locale.US, "device sent %d bytes, recording had %d frames, %d bytes",
+                this.bytesReceived.get(), this.framesRecordedOut, this.bytesRecordedOut));
+    }
+
+    private void pace(long start, long offsetNanos) throws IOException {
+        this.lastNanos = offsetNanos;
+        if (this.speed <= 0) {
+            return;
+        }
+        long due = start + (long) (offsetNanos / this.speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            }
+        }
+    }
+
+    private static Command decode(int version, ByteBuffer frame) throws IOException {
+        ByteBuffer copy = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Command command = Command.obtain();
+        if (version == Command.VERSION_2) {
+            CompactCodec.readFrom(command, copy);
+        } else {
+            command.readFrom(copy);
+        }
+        return command;
+    }
+
+    private void forEachEntry(EntryHandler handler) throws IOException {
+        for (int number = 0; ; ++number) {
+            File file = new File(this.directory, SessionRecorder.segmentName(number));
+            if (!file.exists()) {
+                if (number == 0) {
+                    throw new IOException("No recording in " + this.directory);
+                }
+                return;
+            }
+            MappedByteBuffer segment;
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            if (segment.getInt() != SessionRecorder.MAGIC || segment.getInt() != SessionRecorder.FORMAT_VERSION) {
+                throw new IOException(file + " is not a session segment");
+            }
+            while (segment.remaining() >= SessionRecorder.ENTRY_HEADER_SIZE) {
+                byte kind = segment.get();
+                if (kind == 0) {
+                    break;
+                }
+                int version = segment.get();
+                int connectionId = segment.getInt();
+                long nanos = segment.getLong();
+                int length = segment.getInt();
+                ByteBuffer frame = segment.slice();
+                frame.limit(length);
+                handler.onEntry(kind, version, connectionId, nanos, frame);
+                segment.position(segment.position() + length);
+            }
+        }
+    }
+
+    private interface EntryHandler {
+        void onEntry(byte kind, int version, int connectionId, long nanos, ByteBuffer frame) throws IOException;
+    }
+
+    /**
+     * A replayed connection. A daemon thread reads and counts whatever the device sends, so its
+     * outbound buffer never fills up.
+     */
+    private final class Replayed implements Runnable {
+        private final SocketChannel channel;
+
+        Replayed(InetSocketAddress address) throws IOException {
+            this.channel = SocketChannel.open(address);
+            this.channel.socket().setTcpNoDelay(true);
+            Thread reader = new Thread(this, "replayReader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void send(ByteBuffer frame) throws IOException {
+            while (frame.hasRemaining()) {
+                this.channel.write(frame);
+            }
+        }
+
+        /**
+         * Closes the sending side only, so the device still reads everything sent before and the
+         * reader sees its answers until the device closes the connection as well.
+         */
+        void finish() throws IOException {
+            this.channel.socket().shutdownOutput();
+        }
+
+        void close() {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+            try {
+                int n;
+                while ((n = this.channel.read(buffer)) != -1) {
+                    bytesReceived.addAndGet(n);
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+            close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.redkea.androidthings;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/*
+        redkea library for Android Things
+        Copyright 2017 redkea
+
+        This file is part of the redkea library for Android Things.
+
+    The redkea library for Android Things is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    The redkea library for Android Things is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with the redkea library for Android Things.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Prints a trace file written by {@link Manager#dumpTrace(java.io.File)}: the latency of each
+ * hop between two stages over all traces, and the slowest traces stage by stage, so a lag can be
+ * pinned on the network thread, the receiver queue, the receive function or the pin write.
+ * <p>
+ * Usage: {@code TraceReport FILE [SLOWEST]}
+ */
+public final class TraceReport {
+    private static final String[] STAGES = {"read", "decoded", "dispatched", "queued", "callbackStart",
+            "callbackEnd", "written"};
+
+    private TraceReport() {
+        /* do nothing - hiding constructor */
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: TraceReport FILE [SLOWEST]");
+            return;
+        }
+        int slowest = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+        byte[] types;
+        String[] keys;
+        long[][] stamps;
+        try {
+            if (in.readInt() != Tracer.MAGIC || in.readInt() != Tracer.FORMAT_VERSION) {
+                throw new IOException(args[0] + " is not a trace file");
+            }
+            int stageCount = in.readInt();
+            int count = in.readInt();
+            types = new byte[count];
+            keys = new String[count];
+            stamps = new long[count][stageCount];
+            for (int i = 0; i < count; ++i) {
+                types[i] = in.readByte();
+                keys[i] = in.readUTF();
+                for (int stage = 0; stage < stageCount; ++stage) {
+                    stamps[i][stage] = in.readLong();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        System.out.println(stamps.length + " traces");
+
+        // the hop into each stage, from the closest earlier stage the trace passed
+        Histogram[] hops = new Histogram[STAGES.length];
+        Histogram total = new Histogram();
+        for (int i = 1; i < hops.length; ++i) {
+            hops[i] = new Histogram();
+        }
+        for (long[] trace : stamps) {
+            for (int stage = 1; stage < STAGES.length && stage < trace.length; ++stage) {
+                int previous = previousStage(trace, stage);
+                if (trace[stage] != 0 && previous >= 0) {
+                    hops[stage].record(trace[stage] - trace[previous]);
+                }
+            }
+            total.record(duration(trace));
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%-16s %8s %10s %10s %10s %10s", "hop into (us)", "count", "p50",
+                "p90", "p99", "max"));
+        for (int stage = 1; stage < hops.length; ++stage) {
+            print(STAGES[stage], hops[stage]);
+        }
+        print("total", total);
+
+        System.out.println();
+        System.out.println("slowest traces (us after read):");
+        Integer[] order = new Integer[stamps.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        final long[][] traces = stamps;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(duration(traces[b]), duration(traces[a]));
+            }
+        });
+        for (int i = 0; i < Math.min(slowest, order.length); ++i) {
+            int index = order[i];
+            StringBuilder line = new StringBuilder(String.format(Locale.US, "%-20s %-12s",
+                    CommandType.fromCode(types[index]), keys[index]));
+            long[] trace = stamps[index];
+            for (int stage = 1; stage < trace.length && stage < STAGES.length; ++stage) {
+                if (trace[stage] != 0) {
+                    line.append(String.format(Locale.US, " %s=%.1f", STAGES[stage], (trace[stage] - trace[0]) / 1000.0));
+                }
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static int previousStage(long[] trace, int stage) {
+        for (int previous = stage - 1; previous >= 0; --previous) {
+            if (trace[previous] != 0) {
+                return previous;
+            }
+        }
+        return -1;
+    }
+
+    private static long duration(long[] trace) {
+        long last = 0;
+        for (long stamp : trace) {
+            last = Math.max(last, stamp);
+        }
+        return last - trace[0];
+    }
+
+    private static void print(String name, Histogram histogram) {
+        System.out.println(String.format(Locale.US, "%-16s %8d %10.1f %10.1f %10.1f %10.1f", name,
+                histogram.getCount(), histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getMax() / 1000.0));
+    }
+}